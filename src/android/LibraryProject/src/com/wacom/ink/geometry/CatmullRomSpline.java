@@ -0,0 +1,304 @@
+/*
+ * Created by Zahari Pastarmadjiev.
+ * Copyright (c) 2014 Wacom. All rights reserved.
+ */
+
+package com.wacom.ink.geometry;
+
+import java.nio.FloatBuffer;
+
+/**
+ * The CatmullRomSpline class is a set of static methods, which evaluate the uniform Catmull-Rom splines used by the paths, directly over a strided buffer of control points.
+ * <br/>
+ * The segment with index i is the curve between the control points i+1 and i+2, and it is defined by the control points i, i+1, i+2 and i+3.
+ * A path with n control points has n-3 segments. The spline parameter t is in the range [0, 1] within each segment.
+ * The x and y coordinates are expected at offsets 0 and 1 of each control point; other values (for example the width) are selected by their offset, called channel.
+ * <br/>
+ * The batch methods evaluate arrays of (segment, t) pairs. Each value is a weighted sum of four control point values with weights computed from t without branching,
+ * so the loops are simple enough to be unrolled and vectorized by the compiler. No memory is allocated by any of the methods.
+ */
+public class CatmullRomSpline {
+	// The abscissas and weights of the 5-point Gauss-Legendre quadrature over [0, 1].
+	private final static float[] GAUSS_T = {0.046910077f, 0.23076534f, 0.5f, 0.76923466f, 0.9530899f};
+	private final static float[] GAUSS_W = {0.11846344f, 0.23931434f, 0.28444445f, 0.23931434f, 0.11846344f};
+
+	private CatmullRomSpline(){
+	}
+
+	/**
+	 * Returns the number of the segments of a path.
+	 * @param size The physical size in floats of the control points.
+	 * @param stride The stride of the control points.
+	 * @return The number of the segments, or 0 if there are less than 4 control points.
+	 */
+	public static int getSegmentsCount(int size, int stride){
+		return Math.max(0, size/stride - 3);
+	}
+
+	/**
+	 * Evaluates a single value of the spline.
+	 * @param points The control points.
+	 * @param position The position of the first control point in the buffer.
+	 * @param stride The stride of the control points.
+	 * @param channel The offset of the value within a control point.
+	 * @param segment The index of the segment.
+	 * @param t The spline parameter in the range [0, 1].
+	 * @return The value.
+	 */
+	public static float evaluate(FloatBuffer points, int position, int stride, int channel, int segment, float t){
+		int index = position + segment*stride + channel;
+		float t2 = t*t;
+		float t3 = t2*t;
+		return 0.5f*((-t + 2*t2 - t3)*points.get(index)
+				+ (2 - 5*t2 + 3*t3)*points.get(index + stride)
+				+ (t + 4*t2 - 3*t3)*points.get(index + 2*stride)
+				+ (t3 - t2)*points.get(index + 3*stride));
+	}
+
+	/**
+	 * Evaluates the derivative of a single value of the spline with respect to the spline parameter.
+	 * The parameters are the same as in {@link #evaluate(FloatBuffer, int, int, int, int, float)}.
+	 * @return The derivative.
+	 */
+	public static float evaluateDerivative(FloatBuffer points, int position, int stride, int channel, int segment, float t){
+		int index = position + segment*stride + channel;
+		float t2 = t*t;
+		return 0.5f*((-1 + 4*t - 3*t2)*points.get(index)
+				+ (9*t2 - 10*t)*points.get(index + stride)
+				+ (1 + 8*t - 9*t2)*points.get(index + 2*stride)
+				+ (3*t2 - 2*t)*points.get(index + 3*stride));
+	}
+
+	/**
+	 * Evaluates a value of the spline for an array of (segment, t) pairs.
+	 * @param points The control points.
+	 * @param position The position of the first control point in the buffer.
+	 * @param stride The stride of the control points.
+	 * @param channel The offset of the value within a control point.
+	 * @param segments The indices of the segments.
+	 * @param ts The spline parameters.
+	 * @param count The number of the pairs.
+	 * @param result The array, where the values will be stored.
+	 * @param resultOffset The index in the result array of the first value.
+	 * @param resultStride The distance in the result array between two successive values.
+	 */
+	public static void evaluate(FloatBuffer points, int position, int stride, int channel, int[] segments, float[] ts, int count, float[] result, int resultOffset, int resultStride){
+		for (int i=0;i<count;i++){
+			result[resultOffset + i*resultStride] = evaluate(points, position, stride, channel, segments[i], ts[i]);
+		}
+	}
+
+	/**
+	 * Evaluates the derivative of a value of the spline for an array of (segment, t) pairs.
+	 * The parameters are the same as in {@link #evaluate(FloatBuffer, int, int, int, int[], float[], int, float[], int, int)}.
+	 */
+	public static void evaluateDerivatives(FloatBuffer points, int position, int stride, int channel, int[] segments, float[] ts, int count, float[] result, int resultOffset, int resultStride){
+		for (int i=0;i<count;i++){
+			result[resultOffset + i*resultStride] = evaluateDerivative(points, position, stride, channel, segments[i], ts[i]);
+		}
+	}
+
+	/**
+	 * Evaluates the positions of the spline for an array of (segment, t) pairs.
+	 * @param points The control points.
+	 * @param position The position of the first control point in the buffer.
+	 * @param stride The stride of the control points.
+	 * @param segments The indices of the segments.
+	 * @param ts The spline parameters.
+	 * @param count The number of the pairs.
+	 * @param result The array, where the positions will be stored as (x, y) pairs. Its length should be at least 2*count.
+	 */
+	public static void evaluatePositions(FloatBuffer points, int position, int stride, int[] segments, float[] ts, int count, float[] result){
+		evaluate(points, position, stride, 0, segments, ts, count, result, 0, 2);
+		evaluate(points, position, stride, 1, segments, ts, count, result, 1, 2);
+	}
+
+	/**
+	 * Evaluates the unit tangents of the spline for an array of (segment, t) pairs.
+	 * The parameters are the same as in {@link #evaluatePositions(FloatBuffer, int, int, int[], float[], int, float[])}.
+	 * Where the spline has a zero derivative, the tangent is (0, 0).
+	 */
+	public static void evaluateTangents(FloatBuffer points, int position, int stride, int[] segments, float[] ts, int count, float[] result){
+		evaluateDerivatives(points, position, stride, 0, segments, ts, count, result, 0, 2);
+		evaluateDerivatives(points, position, stride, 1, segments, ts, count, result, 1, 2);
+		for (int i=0;i<count;i++){
+			float dx = result[i*2];
+			float dy = result[i*2+1];
+			float length = (float)Math.sqrt(dx*dx + dy*dy);
+			float scale = length>0?1.0f/length:0;
+			result[i*2] = dx*scale;
+			result[i*2+1] = dy*scale;
+		}
+	}
+
+	/**
+	 * Evaluates the widths of the spline for an array of (segment, t) pairs.
+	 * @param points The control points.
+	 * @param position The position of the first control point in the buffer.
+	 * @param stride The stride of the control points.
+	 * @param widthChannel The offset of the width within a control point, usually 2.
+	 * @param segments The indices of the segments.
+	 * @param ts The spline parameters.
+	 * @param count The number of the pairs.
+	 * @param result The array, where the widths will be stored.
+	 */
+	public static void evaluateWidths(FloatBuffer points, int position, int stride, int widthChannel, int[] segments, float[] ts, int count, float[] result){
+		evaluate(points, position, stride, widthChannel, segments, ts, count, result, 0, 1);
+	}
+
+	/**
+	 * Calculates the arc length of a part of a segment, using a 5-point Gauss-Legendre quadrature.
+	 * @param points The control points.
+	 * @param position The position of the first control point in the buffer.
+	 * @param stride The stride of the control points.
+	 * @param segment The index of the segment.
+	 * @param ts The spline parameter where the part starts.
+	 * @param tf The spline parameter where the part ends.
+	 * @return The arc length.
+	 */
+	public static float getSegmentLength(FloatBuffer points, int position, int stride, int segment, float ts, float tf){
+		float length = 0;
+		float range = tf - ts;
+		for (int i=0;i<GAUSS_T.length;i++){
+			float t = ts + range*GAUSS_T[i];
+			float dx = evaluateDerivative(points, position, stride, 0, segment, t);
+			float dy = evaluateDerivative(points, position, stride, 1, segment, t);
+			length += GAUSS_W[i]*(float)Math.sqrt(dx*dx + dy*dy);
+		}
+		return length*range;
+	}
+
+	/**
+	 * Finds the spline parameter, at which the arc length from a given parameter reaches a given distance.
+	 * The parameter is found with a few Newton iterations over {@link #getSegmentLength(FloatBuffer, int, int, int, float, float)}.
+	 * @param points The control points.
+	 * @param position The position of the first control point in the buffer.
+	 * @param stride The stride of the control points.
+	 * @param segment The index of the segment.
+	 * @param ts The spline parameter where the distance is measured from.
+	 * @param distance The arc length from ts.
+	 * @return The spline parameter, clamped to the range [ts, 1].
+	 */
+	public static float getParameterAtLength(FloatBuffer points, int position, int stride, int segment, float ts, float distance){
+		float length = getSegmentLength(points, position, stride, segment, ts, 1);
+		if (distance>=length){
+			return 1;
+		}
+		if (distance<=0){
+			return ts;
+		}
+		float t = ts + (1 - ts)*distance/length;
+		for (int i=0;i<4;i++){
+			float dx = evaluateDerivative(points, position, stride, 0, segment, t);
+			float dy = evaluateDerivative(points, position, stride, 1, segment, t);
+			float speed = (float)Math.sqrt(dx*dx + dy*dy);
+			if (speed==0){
+				break;
+			}
+			t -= (getSegmentLength(points, position, stride, segment, ts, t) - distance)/speed;
+			t = Math.max(ts, Math.min(1, t));
+		}
+		return t;
+	}
+
+	/**
+	 * Calculates the cumulative arc lengths of the segments of a path.
+	 * @param points The control points.
+	 * @param position The position of the first control point in the buffer.
+	 * @param size The physical size in floats of the control points.
+	 * @param stride The stride of the control points.
+	 * @param result The array, where the length of the path from its beginning to the end of each segment will be stored. Its length should be at least the segments count.
+	 * @return The total length of the path.
+	 */
+	public static float getCumulativeLengths(FloatBuffer points, int position, int size, int stride, float[] result){
+		int segmentsCount = getSegmentsCount(size, stride);
+		float length = 0;
+		for (int s=0;s<segmentsCount;s++){
+			length += getSegmentLength(points, position, stride, s, 0, 1);
+			result[s] = length;
+		}
+		return length;
+	}
+
+	/**
+	 * Converts a segment into a cubic Bezier curve. The curve starts at the control point segment+1 and ends at the control point segment+2.
+	 * @param points The control points.
+	 * @param position The position of the first control point in the buffer.
+	 * @param stride The stride of the control points.
+	 * @param channel The offset of the value within a control point.
+	 * @param segment The index of the segment.
+	 * @param result The array, where the four Bezier control values will be stored.
+	 * @param resultOffset The index in the result array of the first value.
+	 */
+	public static void toBezier(FloatBuffer points, int position, int stride, int channel, int segment, float[] result, int resultOffset){
+		int index = position + segment*stride + channel;
+		float p0 = points.get(index);
+		float p1 = points.get(index + stride);
+		float p2 = points.get(index + 2*stride);
+		float p3 = points.get(index + 3*stride);
+		result[resultOffset] = p1;
+		result[resultOffset+1] = p1 + (p2 - p0)/6;
+		result[resultOffset+2] = p2 - (p3 - p1)/6;
+		result[resultOffset+3] = p2;
+	}
+
+	/**
+	 * Calculates the bounds of a segment of a path, including the width of the path.
+	 * The bounds of the curve are calculated exactly from the extremes of its Bezier form. The widths of the four control points are used as an upper limit of the width of the segment.
+	 * @param points The control points.
+	 * @param position The position of the first control point in the buffer.
+	 * @param stride The stride of the control points.
+	 * @param widthChannel The offset of the width within a control point, or -1 if the control points don't have a width.
+	 * @param width The width of the path, used when widthChannel is -1.
+	 * @param segment The index of the segment.
+	 * @param result The array, where the bounds will be stored as (left, top, right, bottom).
+	 */
+	public static void getSegmentBounds(FloatBuffer points, int position, int stride, int widthChannel, float width, int segment, float[] result){
+		if (widthChannel>=0){
+			int index = position + segment*stride + widthChannel;
+			width = Math.max(Math.max(points.get(index), points.get(index + stride)), Math.max(points.get(index + 2*stride), points.get(index + 3*stride)));
+		}
+		float halfWidth = width/2;
+		for (int axis=0;axis<2;axis++){
+			int index = position + segment*stride + axis;
+			float p0 = points.get(index);
+			float p1 = points.get(index + stride);
+			float p2 = points.get(index + 2*stride);
+			float p3 = points.get(index + 3*stride);
+			float b1 = p1 + (p2 - p0)/6;
+			float b2 = p2 - (p3 - p1)/6;
+			float min = Math.min(p1, p2);
+			float max = Math.max(p1, p2);
+			// The derivative of the Bezier curve is a*t^2 + b*t + c.
+			float a = 3*(-p1 + 3*b1 - 3*b2 + p2);
+			float b = 6*(p1 - 2*b1 + b2);
+			float c = 3*(b1 - p1);
+			if (Math.abs(a)<1e-6f){
+				if (b!=0){
+					float value = bezierValue(p1, b1, b2, p2, -c/b);
+					min = Math.min(min, value);
+					max = Math.max(max, value);
+				}
+			} else {
+				float discriminant = b*b - 4*a*c;
+				if (discriminant>=0){
+					float root = (float)Math.sqrt(discriminant);
+					float value = bezierValue(p1, b1, b2, p2, (-b + root)/(2*a));
+					min = Math.min(min, value);
+					max = Math.max(max, value);
+					value = bezierValue(p1, b1, b2, p2, (-b - root)/(2*a));
+					min = Math.min(min, value);
+					max = Math.max(max, value);
+				}
+			}
+			result[axis] = min - halfWidth;
+			result[axis + 2] = max + halfWidth;
+		}
+	}
+
+	private static float bezierValue(float p0, float p1, float p2, float p3, float t){
+		t = Math.max(0, Math.min(1, t));
+		float u = 1 - t;
+		return u*u*u*p0 + 3*u*u*t*p1 + 3*u*t*t*p2 + t*t*t*p3;
+	}
+}
@@ -0,0 +1,454 @@
+/*
+ * Created by Zahari Pastarmadjiev.
+ * Copyright (c) 2014 Wacom. All rights reserved.
+ */
+
+package com.wacom.ink.path;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * The JavaPathBuilder class is a pure Java implementation of the {@link PathBuilder} pipeline.
+ * It doesn't use the native library, so it can be used on a plain JVM, for example for server-side processing of ink data.
+ * Instances are independent, so paths can be generated in parallel on several threads, using one instance per thread.
+ * <br/>
+ * The pipeline is the same as the one of the native implementation: the input is filtered with the movement threshold,
+ * normalized with the normalization config and converted into width and alpha values with the property configs.
+ * The property configs are compiled into {@link PropertyFunctionTable} lookup tables, so no transcendental functions are evaluated per input point.
+ * Each accepted input point becomes a Catmull-Rom control point with (x, y, width, alpha) layout,
+ * and the first and the last points are duplicated, so that the spline passes through all of the input points.
+ * <br/>
+ * After the buffers have grown to fit the path, no memory is allocated per input point.
+ * For very long paths a segmented path storage can be enabled with {@link #setSegmentedPathStorage(int)}, so that the path buffer never has to grow.
+ * <br/>
+ * This class has two concrete subclasses: {@link JavaSpeedPathBuilder} and {@link JavaPressurePathBuilder}.
+ */
+public abstract class JavaPathBuilder extends PathBuilder {
+	private final static int INITIAL_PATH_CAPACITY = 1024;
+	private final static int INITIAL_PART_CAPACITY = 64;
+	private final static int POINTS_OVERLAP = 3;
+
+	private final PropertyConfig widthConfig = new PropertyConfig();
+	private final PropertyConfig alphaConfig = new PropertyConfig();
+
+	private float normalizationMinValue;
+	private float normalizationMaxValue;
+	private float movementThreshold;
+
+	private int inputCount;
+	private float firstX;
+	private float firstY;
+	private float firstValue;
+	private float lastX;
+	private float lastY;
+	private float lastWidth;
+	private float lastAlpha;
+
+	private FloatBuffer path;
+	private SegmentedPath segmentedPath;
+	private int segmentedPathChunkPointsCount;
+
+	private FloatBuffer pathPart;
+
+	private FloatBuffer preliminaryPathPart;
+
+	private FloatBuffer preliminaryPath;
+
+	/**
+	 * Constructs a new instance.
+	 * @param density Specify density value used in normalization config.
+	 */
+	public JavaPathBuilder(float density) {
+		super(density);
+		updateStride();
+		path = createBuffer(INITIAL_PATH_CAPACITY);
+		pathPart = createBuffer(INITIAL_PART_CAPACITY);
+		preliminaryPathPart = createBuffer(INITIAL_PART_CAPACITY);
+		preliminaryPath = createBuffer(INITIAL_PART_CAPACITY);
+	}
+
+	@Override
+	protected long initialize(float density) {
+		return 0;
+	}
+
+	/**
+	 * Converts the third component of an accepted input point into the value, which will be normalized and used for the property generation.
+	 * @param x The x coordinate of the input point.
+	 * @param y The y coordinate of the input point.
+	 * @param value The third input value (timestamp, pressure, etc.).
+	 * @param bFirst True if this is the first point of the path.
+	 * @return The input value to be normalized.
+	 */
+	protected abstract float computeInputValue(float x, float y, double value, boolean bFirst);
+
+	/**
+	 * Returns the x coordinate of the last accepted input point.
+	 */
+	protected float getLastX(){
+		return lastX;
+	}
+
+	/**
+	 * Returns the y coordinate of the last accepted input point.
+	 */
+	protected float getLastY(){
+		return lastY;
+	}
+
+	/**
+	 * Starts a new path from the given input point.
+	 */
+	protected FloatBuffer beginInput(float x, float y, double value){
+		beginPath();
+		if (segmentedPathChunkPointsCount==0){
+			segmentedPath = null;
+		} else if (segmentedPath==null || segmentedPath.getChunkPointsCount()!=segmentedPathChunkPointsCount){
+			segmentedPath = new SegmentedPath(segmentedPathChunkPointsCount, stride);
+		} else {
+			segmentedPath.reset(stride);
+		}
+
+		firstX = x;
+		firstY = y;
+		firstValue = computeInputValue(x, y, value, true);
+		lastX = x;
+		lastY = y;
+		inputCount = 1;
+		return pathPart;
+	}
+
+	/**
+	 * Discards the currently generated path part.
+	 */
+	protected void resetPathPart(){
+		pathPartSize = 0;
+	}
+
+	/**
+	 * Appends the control points generated from the given input point to the current path part.
+	 */
+	protected void appendInput(float x, float y, double value){
+		if (inputCount==0 || bFinished || !hasMoved(x, y)){
+			return;
+		}
+		float inputValue = computeInputValue(x, y, value, false);
+		if (inputCount==1){
+			appendFirstPoint(inputValue);
+		}
+		appendPoint(x, y, propertyValue(widthConfig, inputValue), propertyValue(alphaConfig, inputValue));
+		lastX = x;
+		lastY = y;
+		inputCount++;
+	}
+
+	/**
+	 * Ends the path at the given input point.
+	 */
+	protected FloatBuffer endInput(float x, float y, double value){
+		resetPathPart();
+		if (inputCount==0 || bFinished){
+			return pathPart;
+		}
+		boolean bMoved = hasMoved(x, y);
+		if (inputCount==1){
+			if (bMoved){
+				float inputValue = computeInputValue(x, y, value, false);
+				appendFirstPoint(inputValue);
+				appendEndPoint(x, y, inputValue);
+			} else {
+				float width = tapValue(widthConfig);
+				float alpha = tapValue(alphaConfig);
+				for (int i=0;i<4;i++){
+					appendPoint(firstX, firstY, width, alpha);
+				}
+			}
+		} else {
+			if (bMoved){
+				appendEndPoint(x, y, computeInputValue(x, y, value, false));
+			} else {
+				appendLastPoint(lastX, lastY, lastWidth, lastAlpha);
+			}
+		}
+		inputCount = 0;
+		bFinished = true;
+		return pathPart;
+	}
+
+	private void appendFirstPoint(float nextInputValue){
+		float width = Float.isNaN(widthConfig.initialValue)?propertyValue(widthConfig, nextInputValue):widthConfig.initialValue;
+		float alpha = Float.isNaN(alphaConfig.initialValue)?propertyValue(alphaConfig, nextInputValue):alphaConfig.initialValue;
+		appendPoint(firstX, firstY, width, alpha);
+		appendPoint(firstX, firstY, width, alpha);
+	}
+
+	private void appendLastPoint(float x, float y, float width, float alpha){
+		appendPoint(x, y,
+				Float.isNaN(widthConfig.finalValue)?width:widthConfig.finalValue,
+				Float.isNaN(alphaConfig.finalValue)?alpha:alphaConfig.finalValue);
+	}
+
+	// The end input point is converted like any other point, and duplicated, so that the spline ends at it.
+	private void appendEndPoint(float x, float y, float inputValue){
+		float width = propertyValue(widthConfig, inputValue);
+		float alpha = propertyValue(alphaConfig, inputValue);
+		appendLastPoint(x, y, width, alpha);
+		appendLastPoint(x, y, width, alpha);
+	}
+
+	private float tapValue(PropertyConfig config){
+		if (!Float.isNaN(config.initialValue)){
+			return config.initialValue;
+		} else if (!Float.isNaN(config.finalValue)){
+			return config.finalValue;
+		} else {
+			return propertyValue(config, firstValue);
+		}
+	}
+
+	private void appendPoint(float x, float y, float width, float alpha){
+		pathPart = ensureCapacity(pathPart, pathPartSize, pathPartSize + stride);
+		pathPartSize = writePoint(pathPart, pathPartSize, x, y, width, alpha);
+		lastWidth = width;
+		lastAlpha = alpha;
+	}
+
+	private int writePoint(FloatBuffer buffer, int position, float x, float y, float width, float alpha){
+		buffer.put(position++, x);
+		buffer.put(position++, y);
+		if (widthConfig.bEnabled){
+			buffer.put(position++, width);
+		}
+		if (alphaConfig.bEnabled){
+			buffer.put(position++, alpha);
+		}
+		return position;
+	}
+
+	private boolean hasMoved(float x, float y){
+		float dx = x - lastX;
+		float dy = y - lastY;
+		if (movementThreshold>0){
+			return dx*dx + dy*dy >= movementThreshold*movementThreshold;
+		} else {
+			return dx!=0 || dy!=0;
+		}
+	}
+
+	private float propertyValue(PropertyConfig config, float inputValue){
+		if (!config.bEnabled){
+			return Float.NaN;
+		}
+		float normalizedValue = 0;
+		if (normalizationMaxValue>normalizationMinValue){
+			normalizedValue = (inputValue - normalizationMinValue)/(normalizationMaxValue - normalizationMinValue);
+			normalizedValue = Math.max(0.0f, Math.min(1.0f, normalizedValue));
+		}
+		return config.table.evaluate(normalizedValue);
+	}
+
+	@Override
+	public FloatBuffer addPoints(FloatBuffer points, int count) {
+		resetPathPart();
+		for (int i=0;i<count;i++){
+			addInputPoint(points.get(i*3), points.get(i*3+1), points.get(i*3+2));
+		}
+		return pathPart;
+	}
+
+	/**
+	 * Enables or disables the segmented path storage. When enabled, the path is stored in a {@link SegmentedPath} instead of a single contiguous buffer.
+	 * In this mode {@link #getPathBuffer()} returns the last chunk of the segmented path, and {@link #getPathLastUpdatePosition()} is a position inside it,
+	 * so the lastly added path part can be drawn as usual. The whole path should be obtained with {@link #getSegmentedPath()}.
+	 * <br/>The change takes effect with the next path, which will be stored with the stride in effect at its beginning.
+	 * @param chunkPointsCount The number of control points per chunk (greater than {@link SegmentedPath#OVERLAP_POINTS}), or 0 to use a single contiguous buffer.
+	 */
+	public void setSegmentedPathStorage(int chunkPointsCount){
+		if (chunkPointsCount>0 && chunkPointsCount<=SegmentedPath.OVERLAP_POINTS){
+			throw new IllegalArgumentException("chunkPointsCount should be greater than " + SegmentedPath.OVERLAP_POINTS);
+		}
+		segmentedPathChunkPointsCount = Math.max(0, chunkPointsCount);
+	}
+
+	/**
+	 * Returns the segmented path storage.
+	 * @return The segmented path of the current path, or null if the segmented path storage was not enabled when the path began.
+	 */
+	public SegmentedPath getSegmentedPath(){
+		return segmentedPath;
+	}
+
+	@Override
+	public FloatBuffer getPathBuffer() {
+		if (segmentedPath!=null){
+			return segmentedPath.getLastChunk();
+		}
+		return path;
+	}
+
+	@Override
+	public int getPathLastUpdatePosition() {
+		if (segmentedPath!=null){
+			return segmentedPath.getLastChunkSize() - addedPointsSize;
+		}
+		return super.getPathLastUpdatePosition();
+	}
+
+	@Override
+	protected FloatBuffer getPathPartBuffer() {
+		return pathPart;
+	}
+
+	@Override
+	public void addPathPart(FloatBuffer points, int size) {
+		int pointsCount;
+		if (segmentedPath!=null){
+			segmentedPath.append(points, 0, size);
+			pathSize = segmentedPath.getSize();
+			pointsCount = segmentedPath.getLastChunkSize()/stride;
+		} else {
+			path = ensureCapacity(path, pathSize, pathSize + size);
+			for (int i=0;i<size;i++){
+				path.put(pathSize + i, points.get(i));
+			}
+			pathSize += size;
+			pointsCount = pathSize/stride;
+		}
+
+		if (size>0 && pathSize/stride>=4){
+			addedPointsSize = Math.min(pointsCount, size/stride + POINTS_OVERLAP)*stride;
+		} else {
+			addedPointsSize = 0;
+		}
+	}
+
+	@Override
+	public FloatBuffer createPreliminaryPath() {
+		preliminaryPathPartSize = 0;
+		if (inputCount==0 || bFinished){
+			return preliminaryPathPart;
+		}
+		if (pathSize==0){
+			float width = tapValue(widthConfig);
+			float alpha = tapValue(alphaConfig);
+			for (int i=0;i<4;i++){
+				preliminaryPathPartSize = writePoint(preliminaryPathPart, preliminaryPathPartSize, firstX, firstY, width, alpha);
+			}
+		} else {
+			float width = Float.isNaN(widthConfig.finalValue)?lastWidth:widthConfig.finalValue;
+			float alpha = Float.isNaN(alphaConfig.finalValue)?lastAlpha:alphaConfig.finalValue;
+			preliminaryPathPartSize = writePoint(preliminaryPathPart, preliminaryPathPartSize, lastX, lastY, width, alpha);
+		}
+		return preliminaryPathPart;
+	}
+
+	@Override
+	public FloatBuffer getPreliminaryPathPartBuffer() {
+		return preliminaryPathPart;
+	}
+
+	@Override
+	public FloatBuffer finishPreliminaryPath(FloatBuffer preliminaryPathPartBuffer, int size) {
+		FloatBuffer tailSource = getPathBuffer();
+		int tailSourceSize = segmentedPath!=null?segmentedPath.getLastChunkSize():pathSize;
+		int tailSize = Math.min(tailSourceSize, POINTS_OVERLAP*stride);
+		preliminaryPath = ensureCapacity(preliminaryPath, 0, tailSize + size);
+		for (int i=0;i<tailSize;i++){
+			preliminaryPath.put(i, tailSource.get(tailSourceSize - tailSize + i));
+		}
+		for (int i=0;i<size;i++){
+			preliminaryPath.put(tailSize + i, preliminaryPathPartBuffer.get(i));
+		}
+		preliminaryPathSize = tailSize + size;
+		return preliminaryPath;
+	}
+
+	@Override
+	public FloatBuffer getPreliminaryPathBuffer() {
+		return preliminaryPath;
+	}
+
+	@Override
+	public void setMovementThreshold(float minMovement) {
+		movementThreshold = Float.isNaN(minMovement)?0:minMovement;
+	}
+
+	@Override
+	public void setPropertyConfig(PropertyName name, float minValue, float maxValue, float initialValue, float finalValue, PropertyFunction function, float functionParameter, boolean bShouldFlip) {
+		PropertyConfig config = getPropertyConfig(name);
+		config.bEnabled = true;
+		config.initialValue = initialValue;
+		config.finalValue = finalValue;
+		config.table.compile(function, functionParameter, minValue, maxValue, bShouldFlip);
+		updateStride();
+	}
+
+	/**
+	 * Configures a path property with a custom response curve instead of a {@link PropertyFunction}.
+	 * The curve is compiled into a {@link PropertyFunctionTable}, so it is evaluated at the same cost as the built-in functions.
+	 * @param name The name of the property. See {@link PropertyName}.
+	 * @param minValue The minimum property value.
+	 * @param maxValue The maximum property value.
+	 * @param initialValue The property value at the beginning of the path, or Float.NaN.
+	 * @param finalValue The property value at the end of the path, or Float.NaN.
+	 * @param curve The values of the curve in the range from 0 to 1, sampled at equally spaced normalized inputs from 0 to 1.
+	 * @param count The number of the samples of the curve, at least 2.
+	 * @param bShouldFlip If true, the curve value 1 corresponds to the maximum property value.
+	 */
+	public void setPropertyCurve(PropertyName name, float minValue, float maxValue, float initialValue, float finalValue, float[] curve, int count, boolean bShouldFlip) {
+		PropertyConfig config = getPropertyConfig(name);
+		config.table.compile(curve, count, minValue, maxValue, bShouldFlip);
+		config.bEnabled = true;
+		config.initialValue = initialValue;
+		config.finalValue = finalValue;
+		updateStride();
+	}
+
+	@Override
+	public void disablePropertyConfig(PropertyName name) {
+		getPropertyConfig(name).bEnabled = false;
+		updateStride();
+	}
+
+	/**
+	 * Sets the minimum and maximum values that will be used for clamping the input values, without any scaling.
+	 * @param minValue The minimum value.
+	 * @param maxValue The maximum value.
+	 */
+	protected void setNormalizationRange(float minValue, float maxValue) {
+		normalizationMinValue = minValue;
+		normalizationMaxValue = maxValue;
+	}
+
+	private PropertyConfig getPropertyConfig(PropertyName name){
+		return name==PropertyName.Width?widthConfig:alphaConfig;
+	}
+
+	private void updateStride(){
+		stride = 2 + (widthConfig.bEnabled?1:0) + (alphaConfig.bEnabled?1:0);
+	}
+
+	private static FloatBuffer createBuffer(int capacity){
+		return ByteBuffer.allocateDirect(capacity*Float.SIZE/Byte.SIZE).order(ByteOrder.nativeOrder()).asFloatBuffer();
+	}
+
+	private static FloatBuffer ensureCapacity(FloatBuffer buffer, int size, int capacity){
+		if (capacity<=buffer.capacity()){
+			return buffer;
+		}
+		FloatBuffer newBuffer = createBuffer(Math.max(capacity, buffer.capacity()*2));
+		for (int i=0;i<size;i++){
+			newBuffer.put(i, buffer.get(i));
+		}
+		return newBuffer;
+	}
+
+	private static class PropertyConfig {
+		boolean bEnabled;
+		float initialValue;
+		float finalValue;
+		final PropertyFunctionTable table = new PropertyFunctionTable();
+	}
+}
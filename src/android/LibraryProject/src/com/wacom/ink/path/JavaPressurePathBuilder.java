@@ -0,0 +1,80 @@
+/*
+ * Created by Zahari Pastarmadjiev.
+ * Copyright (c) 2014 Wacom. All rights reserved.
+ */
+
+package com.wacom.ink.path;
+
+import java.nio.FloatBuffer;
+
+/**
+ * The JavaPressurePathBuilder class is a pure Java counterpart of the {@link PressurePathBuilder} class, designed for building of paths from pressure based user input.
+ * See {@link JavaPathBuilder}.
+ * <br/>
+ * It is not a subclass of the PressurePathBuilder class, so code which should work with both builders has to be typed on {@link PathBuilder}.
+ */
+public class JavaPressurePathBuilder extends JavaPathBuilder {
+	
+	/**
+	 * Constructs a new instance.
+	 * @param density Specify density value used in normalization config.
+	 */
+	public JavaPressurePathBuilder(float density) {
+		super(density);
+	}
+	
+	/**
+	 * Starts building a path from pressure based input. See {@link PressurePathBuilder#beginPath(float, float, float)}.
+	 * @param x The x coordinate of the user's input in the desired path's coordinate system.
+	 * @param y The y coordinate of the user's input in the desired path's coordinate system.
+	 * @param pressure The pressure value.
+	 * @return A part of a path (a set of control points) as a float buffer.
+	 */
+	public FloatBuffer beginPath(float x, float y, float pressure) {
+		return beginInput(x, y, pressure);
+	}
+
+	/**
+	 * Continues the path generation from pressure based input. See {@link PressurePathBuilder#addPoint(float, float, float)}.
+	 * @param x The x coordinate of the user's input in the desired path's coordinate system.
+	 * @param y The y coordinate of the user's input in the desired path's coordinate system.
+	 * @param pressure The pressure value.
+	 * @return A part of a path (a set of control points) as a float buffer.
+	 */
+	public FloatBuffer addPoint(float x, float y, float pressure) {
+		resetPathPart();
+		appendInput(x, y, pressure);
+		return getPathPartBuffer();
+	}
+
+	/**
+	 * Ends the path generation from pressure based input. See {@link PressurePathBuilder#endPath(float, float, float)}.
+	 * @param x The x coordinate of the user's input in the desired path's coordinate system.
+	 * @param y The y coordinate of the user's input in the desired path's coordinate system.
+	 * @param pressure The pressure value.
+	 * @return A part of a path (a set of control points) as a float buffer.
+	 */
+	public FloatBuffer endPath(float x, float y, float pressure) {
+		return endInput(x, y, pressure);
+	}
+	
+	@Override
+	protected void addInputPoint(float x, float y, float value) {
+		appendInput(x, y, value);
+	}
+	
+	@Override
+	protected float computeInputValue(float x, float y, double pressure, boolean bFirst) {
+		return (float)pressure;
+	}
+
+	@Override
+	/**
+	 * Sets the min and max pressure values that will be used for clamping the input values.
+	 * @param minValue The minimum pressure.
+	 * @param maxValue The maximum pressure.
+	 */
+	public void setNormalizationConfig(float minValue, float maxValue) {
+		setNormalizationRange(minValue, maxValue);
+	}
+}
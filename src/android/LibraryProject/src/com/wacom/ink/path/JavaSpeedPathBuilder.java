@@ -0,0 +1,118 @@
+/*
+ * Created by Zahari Pastarmadjiev.
+ * Copyright (c) 2014 Wacom. All rights reserved.
+ */
+
+package com.wacom.ink.path;
+
+import java.nio.FloatBuffer;
+
+/**
+ * The JavaSpeedPathBuilder class is a pure Java counterpart of the {@link SpeedPathBuilder} class, designed for building of paths from velocity based user input.
+ * See {@link JavaPathBuilder}.
+ * <br/>
+ * It is not a subclass of the SpeedPathBuilder class, so code which should work with both builders has to be typed on {@link PathBuilder}.
+ */
+public class JavaSpeedPathBuilder extends JavaPathBuilder {
+	private double beginTimestamp;
+	private double lastTimestamp;
+	private float lastVelocity;
+	private VelocityEstimator velocityEstimator;
+	
+	/**
+	 * Constructs a new instance.
+	 * @param density Specify density value used in normalization config.
+	 */
+	public JavaSpeedPathBuilder(float density) {
+		super(density);
+	}
+	
+	/**
+	 * Starts building a path from velocity based input. See {@link SpeedPathBuilder#beginPath(float, float, double)}.
+	 * @param x The x coordinate of the user's input in the desired path's coordinate system.
+	 * @param y The y coordinate of the user's input in the desired path's coordinate system.
+	 * @param timestamp The timestamp of the user's input in seconds with double precision. It is used for the velocity calculation.
+	 * @return A part of a path (a set of control points) as a float buffer.
+	 */
+	public FloatBuffer beginPath(float x, float y, double timestamp) {
+		beginTimestamp = timestamp;
+		return beginInput(x, y, timestamp);
+	}
+
+	/**
+	 * Continues the path generation from velocity based input. See {@link SpeedPathBuilder#addPoint(float, float, double)}.
+	 * @param x The x coordinate of the user's input in the desired path's coordinate system.
+	 * @param y The y coordinate of the user's input in the desired path's coordinate system.
+	 * @param timestamp The timestamp of the user's input in seconds with double precision. It is used for the velocity calculation.
+	 * @return A part of a path (a set of control points) as a float buffer.
+	 */
+	public FloatBuffer addPoint(float x, float y, double timestamp) {
+		resetPathPart();
+		appendInput(x, y, timestamp);
+		return getPathPartBuffer();
+	}
+
+	/**
+	 * Ends the path generation from velocity based input. See {@link SpeedPathBuilder#endPath(float, float, double)}.
+	 * @param x The x coordinate of the user's input in the desired path's coordinate system.
+	 * @param y The y coordinate of the user's input in the desired path's coordinate system.
+	 * @param timestamp The timestamp of the user's input in seconds with double precision. It is used for the velocity calculation.
+	 * @return A part of a path (a set of control points) as a float buffer.
+	 */
+	public FloatBuffer endPath(float x, float y, double timestamp) {
+		return endInput(x, y, timestamp);
+	}
+	
+	/**
+	 * Returns the timestamp passed to {@link #beginPath(float, float, double)}. The time values of the points passed to {@link #addPoints(FloatBuffer, int)} are relative to it.
+	 * @return The timestamp in seconds.
+	 */
+	public double getBeginTimestamp(){
+		return beginTimestamp;
+	}
+	
+	/**
+	 * Sets an estimator, which will calculate the velocity over a sliding time window, instead of from the last two input points.
+	 * This makes the widths and opacities robust to the millisecond resolution and the batched delivery of the touch input.
+	 * @param velocityEstimator The estimator, or null to calculate the velocity from the last two input points.
+	 */
+	public void setVelocityEstimator(VelocityEstimator velocityEstimator){
+		this.velocityEstimator = velocityEstimator;
+	}
+	
+	@Override
+	protected void addInputPoint(float x, float y, float value) {
+		appendInput(x, y, beginTimestamp + value);
+	}
+	
+	@Override
+	protected float computeInputValue(float x, float y, double timestamp, boolean bFirst) {
+		if (velocityEstimator!=null){
+			if (bFirst){
+				velocityEstimator.reset();
+			}
+			lastVelocity = velocityEstimator.addSample(x, y, timestamp);
+		} else if (bFirst){
+			lastVelocity = 0;
+		} else {
+			double dt = timestamp - lastTimestamp;
+			if (dt>0){
+				float dx = x - getLastX();
+				float dy = y - getLastY();
+				lastVelocity = (float)(Math.sqrt(dx*dx + dy*dy)/dt);
+			}
+		}
+		lastTimestamp = timestamp;
+		return lastVelocity;
+	}
+
+	@Override
+	/**
+	 * Sets the min and max velocities that will be used for clamping the input values.
+	 * @param minValue The minimum velocity.
+	 * @param maxValue The maximum velocity.
+	 */
+	public void setNormalizationConfig(float minValue, float maxValue) {
+		setNormalizationRange(density*minValue, density*maxValue);
+	}
+}
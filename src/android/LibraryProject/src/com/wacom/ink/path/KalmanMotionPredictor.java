@@ -0,0 +1,119 @@
+/*
+ * Created by Zahari Pastarmadjiev.
+ * Copyright (c) 2014 Wacom. All rights reserved.
+ */
+
+package com.wacom.ink.path;
+
+/**
+ * This class predicts the pen position with a Kalman filter, which tracks the position and the velocity of the pen independently for each axis.
+ * The filter uses a constant velocity model, where the changes of the velocity are treated as process noise.
+ * Compared to the {@link LinearMotionPredictor} it is less sensitive to the noise of the individual samples.
+ */
+public class KalmanMotionPredictor implements MotionPredictor {
+	/**
+	 * The default standard deviation of the measured positions in pixels.
+	 */
+	public final static float DEFAULT_MEASUREMENT_NOISE = 1.0f;
+
+	/**
+	 * The default standard deviation of the pen acceleration in pixels per second squared.
+	 */
+	public final static float DEFAULT_PROCESS_NOISE = 4000.0f;
+
+	private float measurementNoise = DEFAULT_MEASUREMENT_NOISE;
+	private float processNoise = DEFAULT_PROCESS_NOISE;
+
+	private final Axis xAxis = new Axis();
+	private final Axis yAxis = new Axis();
+	private double lastTimestamp;
+	private int count;
+
+	/**
+	 * Configures the filter.
+	 * @param measurementNoise The standard deviation of the measured positions in pixels.
+	 * @param processNoise The standard deviation of the pen acceleration in pixels per second squared.
+	 */
+	public void setNoise(float measurementNoise, float processNoise){
+		this.measurementNoise = measurementNoise;
+		this.processNoise = processNoise;
+	}
+
+	@Override
+	public void reset(){
+		count = 0;
+	}
+
+	@Override
+	public void addSample(float x, float y, double timestamp){
+		double r = measurementNoise*measurementNoise;
+		if (count==0){
+			xAxis.init(x, r);
+			yAxis.init(y, r);
+		} else {
+			double dt = timestamp - lastTimestamp;
+			if (dt>0){
+				double q = processNoise*processNoise;
+				xAxis.predict(dt, q);
+				yAxis.predict(dt, q);
+			}
+			xAxis.update(x, r);
+			yAxis.update(y, r);
+		}
+		lastTimestamp = timestamp;
+		count++;
+	}
+
+	@Override
+	public boolean predict(double timestamp, float[] result){
+		if (count<2){
+			return false;
+		}
+		double dt = timestamp - lastTimestamp;
+		result[0] = (float)(xAxis.position + xAxis.velocity*dt);
+		result[1] = (float)(yAxis.position + yAxis.velocity*dt);
+		return true;
+	}
+
+	private static class Axis {
+		double position;
+		double velocity;
+		// The covariance matrix of the state.
+		double p00, p01, p11;
+
+		void init(float value, double r){
+			position = value;
+			velocity = 0;
+			p00 = r;
+			p01 = 0;
+			// The initial velocity is unknown.
+			p11 = 1e6;
+		}
+
+		void predict(double dt, double q){
+			position += velocity*dt;
+			double dt2 = dt*dt;
+			double n00 = p00 + 2*dt*p01 + dt2*p11 + q*dt2*dt2/4;
+			double n01 = p01 + dt*p11 + q*dt2*dt/2;
+			double n11 = p11 + q*dt2;
+			p00 = n00;
+			p01 = n01;
+			p11 = n11;
+		}
+
+		void update(float value, double r){
+			double s = p00 + r;
+			double k0 = p00/s;
+			double k1 = p01/s;
+			double innovation = value - position;
+			position += k0*innovation;
+			velocity += k1*innovation;
+			double n00 = (1 - k0)*p00;
+			double n01 = (1 - k0)*p01;
+			double n11 = p11 - k1*p01;
+			p00 = n00;
+			p01 = n01;
+			p11 = n11;
+		}
+	}
+}
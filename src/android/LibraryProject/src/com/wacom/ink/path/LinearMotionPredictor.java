@@ -0,0 +1,133 @@
+/*
+ * Created by Zahari Pastarmadjiev.
+ * Copyright (c) 2014 Wacom. All rights reserved.
+ */
+
+package com.wacom.ink.path;
+
+/**
+ * This class predicts the pen position by fitting a polynomial of the time to the most recent input samples with the least squares method.
+ * A polynomial of first degree assumes a constant velocity, while a polynomial of second degree also follows the acceleration of the pen,
+ * which works better for curved strokes, but overshoots more when the pen stops abruptly.
+ * <br/>
+ * Only the samples within the configured time window are used. No memory is allocated per sample.
+ */
+public class LinearMotionPredictor implements MotionPredictor {
+	/**
+	 * The default time window in seconds.
+	 */
+	public final static double DEFAULT_WINDOW = 0.05;
+
+	private final static int MAX_SAMPLES = 16;
+
+	private final int degree;
+	private double window = DEFAULT_WINDOW;
+
+	private final float[] xs = new float[MAX_SAMPLES];
+	private final float[] ys = new float[MAX_SAMPLES];
+	private final double[] timestamps = new double[MAX_SAMPLES];
+	private int head;
+	private int count;
+
+	/**
+	 * Constructs a new instance.
+	 * @param degree The degree of the fitted polynomial: 1 or 2.
+	 */
+	public LinearMotionPredictor(int degree){
+		if (degree<1 || degree>2){
+			throw new IllegalArgumentException("Unsupported degree: " + degree);
+		}
+		this.degree = degree;
+	}
+
+	/**
+	 * Sets the time window. Only the samples not older than the window, relative to the last sample, are used for the fit.
+	 * @param window The time window in seconds.
+	 */
+	public void setWindow(double window){
+		this.window = window;
+	}
+
+	@Override
+	public void reset(){
+		head = 0;
+		count = 0;
+	}
+
+	@Override
+	public void addSample(float x, float y, double timestamp){
+		xs[head] = x;
+		ys[head] = y;
+		timestamps[head] = timestamp;
+		head = (head+1)%MAX_SAMPLES;
+		if (count<MAX_SAMPLES){
+			count++;
+		}
+	}
+
+	@Override
+	public boolean predict(double timestamp, float[] result){
+		if (count<2){
+			return false;
+		}
+		int last = (head + MAX_SAMPLES - 1)%MAX_SAMPLES;
+		double lastTimestamp = timestamps[last];
+
+		// Sums of the powers of the time and of the products with the coordinates. The time is relative to the last sample for better precision.
+		double s0 = 0, s1 = 0, s2 = 0, s3 = 0, s4 = 0;
+		double sx0 = 0, sx1 = 0, sx2 = 0;
+		double sy0 = 0, sy1 = 0, sy2 = 0;
+		int used = 0;
+		for (int i=0;i<count;i++){
+			int index = (last + MAX_SAMPLES - i)%MAX_SAMPLES;
+			double t = timestamps[index] - lastTimestamp;
+			if (i>=2 && -t>window){
+				break;
+			}
+			double t2 = t*t;
+			s0 += 1;
+			s1 += t;
+			s2 += t2;
+			s3 += t2*t;
+			s4 += t2*t2;
+			sx0 += xs[index];
+			sx1 += xs[index]*t;
+			sx2 += xs[index]*t2;
+			sy0 += ys[index];
+			sy1 += ys[index]*t;
+			sy2 += ys[index]*t2;
+			used++;
+		}
+
+		double t = timestamp - lastTimestamp;
+		if (degree==2 && used>=3){
+			double det = det3(s0, s1, s2, s1, s2, s3, s2, s3, s4);
+			if (det!=0){
+				result[0] = (float)evaluateQuadratic(det, s0, s1, s2, s3, s4, sx0, sx1, sx2, t);
+				result[1] = (float)evaluateQuadratic(det, s0, s1, s2, s3, s4, sy0, sy1, sy2, t);
+				return true;
+			}
+		}
+		double det = s0*s2 - s1*s1;
+		if (det==0){
+			result[0] = xs[last];
+			result[1] = ys[last];
+			return true;
+		}
+		result[0] = (float)((sx0*s2 - s1*sx1)/det + (s0*sx1 - s1*sx0)/det*t);
+		result[1] = (float)((sy0*s2 - s1*sy1)/det + (s0*sy1 - s1*sy0)/det*t);
+		return true;
+	}
+
+	private static double evaluateQuadratic(double det, double s0, double s1, double s2, double s3, double s4, double v0, double v1, double v2, double t){
+		// Cramer's rule for the normal equations of the fit.
+		double c0 = det3(v0, s1, s2, v1, s2, s3, v2, s3, s4)/det;
+		double c1 = det3(s0, v0, s2, s1, v1, s3, s2, v2, s4)/det;
+		double c2 = det3(s0, s1, v0, s1, s2, v1, s2, s3, v2)/det;
+		return c0 + c1*t + c2*t*t;
+	}
+
+	private static double det3(double a, double b, double c, double d, double e, double f, double g, double h, double i){
+		return a*(e*i - f*h) - b*(d*i - f*g) + c*(d*h - e*g);
+	}
+}
@@ -0,0 +1,35 @@
+/*
+ * Created by Zahari Pastarmadjiev.
+ * Copyright (c) 2014 Wacom. All rights reserved.
+ */
+
+package com.wacom.ink.path;
+
+/**
+ * This interface is designed to be used by the {@link com.wacom.ink.path.PathPredictor} class, which extends the preliminary path with the predicted pen positions.
+ * An implementation receives the raw input samples of a stroke and estimates the position of the pen at a moment in the near future.
+ * <br/>
+ * WILL Core provides two implementations: {@link LinearMotionPredictor} and {@link KalmanMotionPredictor}.
+ */
+public interface MotionPredictor {
+	/**
+	 * Resets the predictor. After calling this method the samples of a new stroke can be added.
+	 */
+	public void reset();
+
+	/**
+	 * Adds the next input sample of the stroke.
+	 * @param x The x coordinate of the sample.
+	 * @param y The y coordinate of the sample.
+	 * @param timestamp The timestamp of the sample in seconds.
+	 */
+	public void addSample(float x, float y, double timestamp);
+
+	/**
+	 * Estimates the position of the pen at the given moment.
+	 * @param timestamp The moment in seconds. Usually slightly after the timestamp of the last sample.
+	 * @param result An array with at least two elements, where the predicted x and y coordinates will be stored.
+	 * @return True if a prediction was made, false if there are not enough samples.
+	 */
+	public boolean predict(double timestamp, float[] result);
+}
@@ -0,0 +1,181 @@
+/*
+ * Created by Zahari Pastarmadjiev.
+ * Copyright (c) 2014 Wacom. All rights reserved.
+ */
+
+package com.wacom.ink.path;
+
+/**
+ * The MovementThresholdPolicy class calculates the movement threshold of a {@link PathBuilder} from the current scale of the view and the speed of the pen.
+ * <br/>
+ * The threshold is defined in screen pixels and is divided by the scale of the view, so when the view is zoomed out the path builder drops the input points,
+ * which would be closer than a screen pixel or two to each other, and when the view is zoomed in the details of the input are preserved.
+ * When the pen moves fast, the threshold grows up to a configurable maximum, because the successive points are far from each other anyway
+ * and the small deviations are not visible.
+ * <br/>
+ * Typical usage:<br/>
+ * <pre>
+ * thresholdPolicy.setScale(viewScale);
+ * thresholdPolicy.reset();          // on stroke begin
+ * thresholdPolicy.addSample(x, y, timestamp);  // for each input sample, including the historical ones
+ * thresholdPolicy.applyTo(pathBuilder);
+ * </pre>
+ * The threshold is set to the path builder only when it has changed noticeably, so applyTo can be called for every input event.
+ * The same policy can also drive the filtering of the touch input, see {@link com.wacom.ink.utils.TouchUtils#filterMotionEventForInking(android.view.MotionEvent, com.wacom.ink.utils.TouchUtils.TouchPointID, MovementThresholdPolicy)}.
+ */
+public class MovementThresholdPolicy {
+	/**
+	 * The default movement threshold in screen pixels.
+	 */
+	public final static float DEFAULT_THRESHOLD = 2.0f;
+
+	/**
+	 * The default pen speed in screen pixels per second, at which the threshold is doubled.
+	 */
+	public final static float DEFAULT_REFERENCE_SPEED = 2000.0f;
+
+	/**
+	 * The default maximal ratio between the threshold used for fast movements and the base threshold.
+	 */
+	public final static float DEFAULT_MAX_FACTOR = 3.0f;
+
+	private final static float SPEED_SMOOTHING = 0.3f;
+	// The relative change of the threshold, which is applied to the path builder.
+	private final static float APPLY_TOLERANCE = 0.1f;
+
+	private float threshold = DEFAULT_THRESHOLD;
+	private float referenceSpeed = DEFAULT_REFERENCE_SPEED;
+	private float maxFactor = DEFAULT_MAX_FACTOR;
+	private float scale = 1.0f;
+
+	private boolean bHasSample;
+	private float lastX;
+	private float lastY;
+	private double lastTimestamp;
+	private float speed;
+
+	private PathBuilder appliedPathBuilder;
+	private float appliedThreshold = Float.NaN;
+
+	/**
+	 * Sets the base movement threshold, used when the pen moves slowly.
+	 * @param threshold The threshold in screen pixels.
+	 */
+	public void setThreshold(float threshold){
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Configures the dependency of the threshold on the pen speed.
+	 * The threshold grows linearly with the speed: at the reference speed it is twice the base threshold, but never more than maxFactor times the base threshold.
+	 * @param referenceSpeed The speed in screen pixels per second, at which the threshold is doubled. 0 disables the speed adaptation.
+	 * @param maxFactor The maximal ratio between the used and the base threshold.
+	 */
+	public void setSpeedAdaptation(float referenceSpeed, float maxFactor){
+		this.referenceSpeed = referenceSpeed;
+		this.maxFactor = maxFactor;
+	}
+
+	/**
+	 * Sets the scale of the view, where the path is being drawn.
+	 * @param scale The ratio between screen pixels and path units. The default value is 1.
+	 */
+	public void setScale(float scale){
+		if (scale<=0){
+			throw new IllegalArgumentException("scale should be greater than 0");
+		}
+		this.scale = scale;
+	}
+
+	/**
+	 * Returns the scale of the view.
+	 * @return The ratio between screen pixels and path units.
+	 */
+	public float getScale(){
+		return scale;
+	}
+
+	/**
+	 * Resets the speed estimation. This method should be called at the beginning of each stroke.
+	 */
+	public void reset(){
+		bHasSample = false;
+		speed = 0;
+	}
+
+	/**
+	 * Updates the pen speed estimation with the next input sample.
+	 * @param x The x coordinate of the sample in path units.
+	 * @param y The y coordinate of the sample in path units.
+	 * @param timestamp The timestamp of the sample in seconds.
+	 */
+	public void addSample(float x, float y, double timestamp){
+		if (bHasSample){
+			double dt = timestamp - lastTimestamp;
+			if (dt>0){
+				float dx = x - lastX;
+				float dy = y - lastY;
+				float sampleSpeed = (float)(Math.sqrt(dx*dx + dy*dy)*scale/dt);
+				speed += (sampleSpeed - speed)*SPEED_SMOOTHING;
+			}
+		}
+		bHasSample = true;
+		lastX = x;
+		lastY = y;
+		lastTimestamp = timestamp;
+	}
+
+	/**
+	 * Updates the pen speed estimation with the next input sample in screen coordinates, for example a sample of a MotionEvent.
+	 * @param x The x coordinate of the sample in screen pixels.
+	 * @param y The y coordinate of the sample in screen pixels.
+	 * @param timestamp The timestamp of the sample in seconds.
+	 */
+	public void addScreenSample(float x, float y, double timestamp){
+		addSample(x/scale, y/scale, timestamp);
+	}
+
+	/**
+	 * Returns the estimated pen speed.
+	 * @return The speed in screen pixels per second.
+	 */
+	public float getSpeed(){
+		return speed;
+	}
+
+	/**
+	 * Returns the movement threshold for the current scale and pen speed.
+	 * @return The threshold in screen pixels.
+	 */
+	public float getScreenThreshold(){
+		float factor = 1.0f;
+		if (referenceSpeed>0){
+			factor = Math.min(maxFactor, 1.0f + speed/referenceSpeed);
+		}
+		return threshold*factor;
+	}
+
+	/**
+	 * Returns the movement threshold for the current scale and pen speed.
+	 * @return The threshold in path units, as expected by {@link PathBuilder#setMovementThreshold(float)}.
+	 */
+	public float getThreshold(){
+		return getScreenThreshold()/scale;
+	}
+
+	/**
+	 * Sets the current movement threshold to the path builder, unless it differs by less than 10% from the threshold set to the same path builder the last time.
+	 * @param pathBuilder The path builder.
+	 * @return True if the threshold was set.
+	 */
+	public boolean applyTo(PathBuilder pathBuilder){
+		float threshold = getThreshold();
+		if (pathBuilder==appliedPathBuilder && Math.abs(threshold - appliedThreshold)<=APPLY_TOLERANCE*appliedThreshold){
+			return false;
+		}
+		pathBuilder.setMovementThreshold(threshold);
+		appliedPathBuilder = pathBuilder;
+		appliedThreshold = threshold;
+		return true;
+	}
+}
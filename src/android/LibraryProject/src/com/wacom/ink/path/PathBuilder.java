@@ -9,6 +9,9 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 
+import com.wacom.ink.utils.Logger;
+import com.wacom.ink.utils.Utils;
+
 /**
  * The PathBuilder class and its two concrete subclasses {@link com.wacom.ink.path.PressurePathBuilder PressurePathBuilder} and {@link com.wacom.ink.path.SpeedPathBuilder SpeedPathBuilder}
  * are used to translate user input into geometry representation of a stroke.
@@ -35,8 +38,19 @@ import java.nio.FloatBuffer;
  * simple touch-based input, which doesn't provide pressure information:<br/>
  * {@link com.wacom.ink.path.PressurePathBuilder PressurePathBuilder}<br/>
  * {@link com.wacom.ink.path.SpeedPathBuilder SpeedPathBuilder}
+ * <br/>
+ * Both of them have pure Java counterparts, which don't require the native library and can be used on a plain JVM:<br/>
+ * {@link com.wacom.ink.path.JavaPressurePathBuilder JavaPressurePathBuilder}<br/>
+ * {@link com.wacom.ink.path.JavaSpeedPathBuilder JavaSpeedPathBuilder}<br/>
+ * The pure Java builders are subclasses of PathBuilder, but not of the native SpeedPathBuilder and PressurePathBuilder classes.
+ * Code which should work with both implementations has to be typed on PathBuilder, which provides the path part, path and preliminary path methods.
+ * The input methods (beginPath, addPoint and endPath) are declared by each concrete class.
+ * <br/>
+ * The native library is loaded by the native builders only, when they are used for the first time.
  */
 public abstract class PathBuilder{
+	private final static Logger logger = new Logger(PathBuilder.class, true);
+
 	protected float density;
 
 	/**
@@ -67,6 +81,29 @@ public abstract class PathBuilder{
 		public byte getValue(){
 			return value;
 		}
+		
+		/**
+		 * Evaluates the function for a normalized input value.
+		 * @param value The normalized input value, in the range from 0 to 1.
+		 * @param parameter The parameter of the function.
+		 * @return The function value, in the range from 0 to 1.
+		 */
+		public float evaluate(float value, float parameter){
+			switch (this){
+			case Periodic:
+				return (float)(0.5 - 0.5*Math.cos(parameter*Math.PI*value));
+			case Sigmoid:
+				if (parameter==0.0f){
+					return value;
+				}
+				double s0 = 1.0/(1.0 + Math.exp(0.5*parameter));
+				double s1 = 1.0/(1.0 + Math.exp(-0.5*parameter));
+				double s = 1.0/(1.0 + Math.exp(-parameter*(value-0.5)));
+				return (float)((s-s0)/(s1-s0));
+			default:
+				return (float)Math.pow(value, parameter);
+			}
+		}
 	}
 	
 	/**
@@ -111,6 +148,17 @@ public abstract class PathBuilder{
 	private FloatBuffer preliminaryPathPartBuffer;
 	private FloatBuffer preliminaryPathBuffer;
 	
+	private FloatBuffer bulkPathPartBuffer;
+	
+	// Path state, cached on the Java side, so that the getters don't need to call the native code. 
+	// It is updated only by the methods, which could change it. Subclasses, which don't use the native code, maintain it themselves.
+	protected int stride;
+	protected int pathPartSize;
+	protected int pathSize;
+	protected int addedPointsSize;
+	protected int preliminaryPathPartSize;
+	protected int preliminaryPathSize;
+	
 	protected boolean bFinished = false;
 	
 	protected abstract long initialize(float density);
@@ -130,10 +178,18 @@ public abstract class PathBuilder{
 	public PathBuilder(float density) {
 		this.density = density;
 		handle = initialize(density);
+		if (handle!=0){
+			stride = nativeCalculateStride(handle);
+		}
 	}
 	
 	public void beginPath(){
 		bFinished = false;
+		pathPartSize = 0;
+		pathSize = 0;
+		addedPointsSize = 0;
+		preliminaryPathPartSize = 0;
+		preliminaryPathSize = 0;
 	}
 	
 	/**
@@ -141,10 +197,11 @@ public abstract class PathBuilder{
 	 * For example:<br/>
 	 * if a single control point has variable width, then the stride is be 3 (x, y, width);<br/>
 	 * if a single control point has both variable width and variable alpha, then the stride is be 4 (x, y, width, alpha);<br/>
+	 * The stride changes only when the property configuration is changed, so the returned value is cached.
 	 * @return the stride of the current path
 	 */
 	public int getStride() {
-		return nativeCalculateStride(handle);
+		return stride;
 	}
 
 	/**
@@ -205,27 +262,99 @@ public abstract class PathBuilder{
 	protected void setPathPartBuffer(ByteBuffer buffer){
 		pathPartBuffer = buffer.order(ByteOrder.nativeOrder()).asFloatBuffer();
 	}
+	
+	/**
+	 * Stores the size of the path part, generated by the last input method, and returns the path part buffer. 
+	 * Concrete path builders should call this method right after the path part has been generated.
+	 * @return a float buffer
+	 */
+	protected FloatBuffer updatePathPart(){
+		pathPartSize = nativeGetPathPartSize(handle);
+		return getPathPartBuffer();
+	}
+	
+	/**
+	 * Feeds a single input point into the path generation. This method is used by {@link #addPoints(FloatBuffer, int)} for each of the points.
+	 * @param x The x coordinate of the user's input in the desired path's coordinate system.
+	 * @param y The y coordinate of the user's input in the desired path's coordinate system.
+	 * @param value The third input value of the point. Its meaning depends on the concrete class.
+	 */
+	protected abstract void addInputPoint(float x, float y, float value);
+	
+	/**
+	 * Continues the path generation with a batch of input points, for example all historical samples of a single move event. 
+	 * The path parts, generated for each of the points, are concatenated into a single path part, which is returned.
+	 * Its size can be obtained with the {@link #getPathPartSize()} method. 
+	 * The returned path part can be modified by clients (for example smoothened) before adding it to the currently built path with a single {@link #addPathPart(FloatBuffer, int)} call.
+	 * @param points A float buffer containing count sequential (x, y, value) triplets, starting at position 0. The meaning of the value depends on the concrete class:<br/>
+	 * for a {@link PressurePathBuilder} it is the pressure;<br/>
+	 * for a {@link SpeedPathBuilder} it is the time offset in seconds from the timestamp passed to {@link SpeedPathBuilder#beginPath(float, float, double)}, see {@link SpeedPathBuilder#getBeginTimestamp()}. 
+	 * The offsets keep the float precision sufficient for the velocity calculation.
+	 * @param count The number of the points.
+	 * @return A part of a path (a set of control points) as a float buffer.
+	 */
+	public FloatBuffer addPoints(FloatBuffer points, int count){
+		int bulkSize = 0;
+		for (int i=0;i<count;i++){
+			addInputPoint(points.get(i*3), points.get(i*3+1), points.get(i*3+2));
+			int size = nativeGetPathPartSize(handle);
+			if (size>0){
+				bulkPathPartBuffer = ensureBulkPathPartCapacity(bulkPathPartBuffer, bulkSize, bulkSize + size);
+				FloatBuffer part = getPathPartBuffer();
+				int limit = part.limit();
+				part.limit(size);
+				part.position(0);
+				bulkPathPartBuffer.position(bulkSize);
+				bulkPathPartBuffer.put(part);
+				part.limit(limit);
+				part.position(0);
+				bulkSize += size;
+			}
+		}
+		if (bulkPathPartBuffer==null){
+			bulkPathPartBuffer = Utils.createNativeFloatBuffer(0);
+		}
+		bulkPathPartBuffer.position(0);
+		pathPartSize = bulkSize;
+		return bulkPathPartBuffer;
+	}
+	
+	private static FloatBuffer ensureBulkPathPartCapacity(FloatBuffer buffer, int size, int capacity){
+		if (buffer!=null && capacity<=buffer.capacity()){
+			return buffer;
+		}
+		FloatBuffer newBuffer = Utils.createNativeFloatBuffer(Math.max(capacity, buffer==null?64:buffer.capacity()*2));
+		if (buffer!=null){
+			Utils.copyFloatBuffer(buffer, newBuffer, 0, 0, size);
+		}
+		return newBuffer;
+	}
 
 	
 	private native void nativeGetPreliminaryPathPart(long handle);
 	public FloatBuffer createPreliminaryPath() {
 		nativeGetPreliminaryPathPart(handle);
+		preliminaryPathPartSize = nativeGetPreliminaryPathPartSize(handle);
 		return getPreliminaryPathPartBuffer();
 	}
 	
 	private native void nativeGetPreliminaryPath(long handle, FloatBuffer preliminaryPathPartBuffer, int size);
 	public FloatBuffer finishPreliminaryPath(FloatBuffer preliminaryPathPartBuffer, int size) {
 		nativeGetPreliminaryPath(handle, preliminaryPathPartBuffer, size);
+		preliminaryPathSize = nativeGetPreliminaryPathSize(handle);
 		return getPreliminaryPathBuffer();
 	}
 	
 	/**
 	 * This method adds a path part (set of control points) to the currently built path.
+	 * The path part could be either generated from a single input point, or from a batch of points with the {@link #addPoints(FloatBuffer, int)} method.
 	 * @param points The control points to be added to currently built path.
 	 * @param size The size of the path part to be added to the path. This is the physical size in floats of the control points.
 	 */
 	public void addPathPart(FloatBuffer points, int size) {
 		nativeAddPathPart(handle, points, size);
+		pathSize = nativeGetPathSize(handle);
+		addedPointsSize = nativeGetNewPointsSize(handle);
 	}
 	
 	private native int nativeGetNewPointsSize(long handle);
@@ -235,7 +364,7 @@ public abstract class PathBuilder{
 	 * @return The physical size in floats of the added control points.
 	 */
 	public int getAddedPointsSize(){
-		return nativeGetNewPointsSize(handle);
+		return addedPointsSize;
 	}
 	
 	
@@ -243,10 +372,11 @@ public abstract class PathBuilder{
 	
 	/**
 	 * This method returns the size of the control points generated by the PathBuilder from the user input.
+	 * After a {@link #addPoints(FloatBuffer, int)} call this is the size of the whole concatenated path part.
 	 * @return The physical size in floats of the control points.
 	 */
 	public int getPathPartSize(){
-		return nativeGetPathPartSize(handle);
+		return pathPartSize;
 	}
 	
 	private native int nativeGetPathSize(long handle);
@@ -256,7 +386,7 @@ public abstract class PathBuilder{
 	 * @return The physical size in floats of the path.
 	 */
 	public int getPathSize(){
-		return nativeGetPathSize(handle);
+		return pathSize;
 	}
 
 	/**
@@ -274,7 +404,7 @@ public abstract class PathBuilder{
 	 * @return The physical size in floats of the preliminary path.
 	 */
 	public int getPreliminaryPathSize(){
-		return nativeGetPreliminaryPathPartSize(handle);
+		return preliminaryPathPartSize;
 	}
 	
 	private native int nativeGetPreliminaryPathSize(long handle);
@@ -284,7 +414,7 @@ public abstract class PathBuilder{
 	 * @return The physical size in floats of the finished preliminary path.
 	 */
 	public int getFinishedPreliminaryPathSize(){
-		return nativeGetPreliminaryPathSize(handle);
+		return preliminaryPathSize;
 	}
 	
 	/**
@@ -297,17 +427,17 @@ public abstract class PathBuilder{
 	}
 	
 	private void delete() {
-		nativeFinalize(handle);
+		if (handle!=0){
+			nativeFinalize(handle);
+		}
 	}
 	
-	private native boolean nativeHasFinished(long handle);
-	
 	/**
 	 * This method checks if the PathBuilder has finished building the current path. The path will be finished when the endPath method is being called.
 	 * @return True if the path is complete, false otherwise. 
 	 */
 	public boolean hasFinished(){
-		return nativeHasFinished(handle);
+		return bFinished;
 	}
 	
 	protected void finalize() throws Throwable {
@@ -340,6 +470,7 @@ public abstract class PathBuilder{
 	 */
 	public void setPropertyConfig(PropertyName name, float minValue, float maxValue, float initialValue, float finalValue, PropertyFunction function, float functionParameter, boolean bShouldFlip) {
 		nativeSetPropertyConfig(handle, name.getValue(), minValue, maxValue, initialValue, finalValue, function.getValue(), functionParameter, bShouldFlip);
+		stride = nativeCalculateStride(handle);
 	}
 	
 	private native void nativeDisablePropertyConfig(long handle, byte name);
@@ -351,6 +482,7 @@ public abstract class PathBuilder{
 	 */
 	public void disablePropertyConfig(PropertyName name) {
 		nativeDisablePropertyConfig(handle, name.getValue());
+		stride = nativeCalculateStride(handle);
 	}
 	
 	/**
@@ -374,7 +506,16 @@ public abstract class PathBuilder{
 		return size/stride;
 	}
 	
-	static { 
-		System.loadLibrary("InkingEngine");
+	/**
+	 * Loads the native library. It is called by the native path builders, so that the pure Java builders (see {@link JavaPathBuilder}) don't require it.
+	 * @throws UnsatisfiedLinkError If the library can't be loaded. The failure is logged before the error is thrown.
+	 */
+	static void loadNativeLibrary(){
+		try {
+			System.loadLibrary("InkingEngine");
+		} catch (UnsatisfiedLinkError e){
+			logger.e("Unable to load the InkingEngine native library, use the pure Java path builders instead: " + e.getMessage());
+			throw e;
+		}
 	}
 }
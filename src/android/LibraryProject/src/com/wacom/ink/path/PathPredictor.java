@@ -0,0 +1,257 @@
+/*
+ * Created by Zahari Pastarmadjiev.
+ * Copyright (c) 2014 Wacom. All rights reserved.
+ */
+
+package com.wacom.ink.path;
+
+import java.nio.FloatBuffer;
+
+import com.wacom.ink.utils.Utils;
+
+/**
+ * The PathPredictor class extends the preliminary path past the last input point with the pen positions estimated by a {@link MotionPredictor}.
+ * The preliminary path returned by {@link PathBuilder#createPreliminaryPath()} covers only the lag introduced by the interpolation,
+ * while the predicted control points also hide the latency between the touch and the rendering of the ink.
+ * <br/>
+ * The raw input samples of the stroke should be passed to the {@link #addSample(float, float, double)} method,
+ * and the preliminary path part should be passed through the {@link #extend(FloatBuffer, int, int)} method before smoothing and finishing it:
+ * <pre>
+ * FloatBuffer preliminaryPath = pathBuilder.createPreliminaryPath();
+ * preliminaryPath = predictor.extend(preliminaryPath, pathBuilder.getPreliminaryPathSize(), pathBuilder.getStride());
+ * pathBuilder.finishPreliminaryPath(preliminaryPath, predictor.getSize());
+ * </pre>
+ * The predicted control points inherit the width and alpha of the last control point of the preliminary path.
+ * <br/>
+ * Each prediction is compared with the position, where the pen really was at the predicted moment.
+ * The distances are accumulated and can be obtained with the {@link #getPredictionsCount()}, {@link #getMeanError()}, {@link #getMaxError()} and {@link #getLastError()} methods.
+ */
+public class PathPredictor {
+	/**
+	 * The default prediction horizon in milliseconds.
+	 */
+	public final static float DEFAULT_HORIZON = 32.0f;
+
+	private final static int MAX_PENDING_PREDICTIONS = 16;
+
+	private final MotionPredictor predictor;
+	private float horizon = DEFAULT_HORIZON;
+	private int predictedPointsCount = 2;
+
+	private FloatBuffer resultBuffer;
+	private int resultSize;
+	private final float[] prediction = new float[2];
+
+	private boolean bHasSample;
+	private float lastX;
+	private float lastY;
+	private double lastTimestamp;
+
+	private final float[] pendingXs = new float[MAX_PENDING_PREDICTIONS];
+	private final float[] pendingYs = new float[MAX_PENDING_PREDICTIONS];
+	private final double[] pendingTimestamps = new double[MAX_PENDING_PREDICTIONS];
+	private int pendingHead;
+	private int pendingCount;
+
+	private int predictionsCount;
+	private double errorSum;
+	private float maxError;
+	private float lastError = Float.NaN;
+
+	/**
+	 * Constructs a new instance.
+	 * @param predictor The predictor to be used for the estimation of the pen positions.
+	 */
+	public PathPredictor(MotionPredictor predictor){
+		this.predictor = predictor;
+		resultBuffer = Utils.createNativeFloatBuffer(32);
+	}
+
+	/**
+	 * Sets how far in the future the preliminary path should be extended.
+	 * @param milliseconds The prediction horizon in milliseconds. 0 disables the prediction.
+	 */
+	public void setHorizon(float milliseconds){
+		this.horizon = milliseconds;
+	}
+
+	/**
+	 * Returns the prediction horizon.
+	 * @return The prediction horizon in milliseconds.
+	 */
+	public float getHorizon(){
+		return horizon;
+	}
+
+	/**
+	 * Sets the number of the predicted control points, evenly distributed in time up to the horizon. The default value is 2.
+	 * @param count The number of the predicted control points.
+	 */
+	public void setPredictedPointsCount(int count){
+		this.predictedPointsCount = count;
+	}
+
+	/**
+	 * Returns the predictor used by this instance.
+	 * @return The motion predictor.
+	 */
+	public MotionPredictor getMotionPredictor(){
+		return predictor;
+	}
+
+	/**
+	 * Resets the instance. This method should be called at the beginning of each stroke. The accumulated prediction errors are kept.
+	 */
+	public void reset(){
+		predictor.reset();
+		bHasSample = false;
+		pendingCount = 0;
+		resultSize = 0;
+	}
+
+	/**
+	 * Resets the accumulated prediction errors.
+	 */
+	public void resetStatistics(){
+		predictionsCount = 0;
+		errorSum = 0;
+		maxError = 0;
+		lastError = Float.NaN;
+	}
+
+	/**
+	 * Adds the next raw input sample of the stroke.
+	 * The pending predictions, which target moments up to the timestamp of this sample, are compared with the real pen trajectory.
+	 * @param x The x coordinate of the sample.
+	 * @param y The y coordinate of the sample.
+	 * @param timestamp The timestamp of the sample in seconds.
+	 */
+	public void addSample(float x, float y, double timestamp){
+		if (bHasSample){
+			while (pendingCount>0){
+				int index = (pendingHead + MAX_PENDING_PREDICTIONS - pendingCount)%MAX_PENDING_PREDICTIONS;
+				double targetTimestamp = pendingTimestamps[index];
+				if (targetTimestamp>timestamp){
+					break;
+				}
+				float actualX = x;
+				float actualY = y;
+				if (timestamp>lastTimestamp && targetTimestamp>lastTimestamp){
+					float t = (float)((targetTimestamp - lastTimestamp)/(timestamp - lastTimestamp));
+					actualX = lastX + (x - lastX)*t;
+					actualY = lastY + (y - lastY)*t;
+				}
+				registerError((float)Utils.calcDistance(pendingXs[index], pendingYs[index], actualX, actualY));
+				pendingCount--;
+			}
+		}
+		predictor.addSample(x, y, timestamp);
+		bHasSample = true;
+		lastX = x;
+		lastY = y;
+		lastTimestamp = timestamp;
+	}
+
+	private void registerError(float error){
+		predictionsCount++;
+		errorSum += error;
+		maxError = Math.max(maxError, error);
+		lastError = error;
+	}
+
+	/**
+	 * Extends the preliminary path part with the predicted control points. The last control point of the part (the Catmull-Rom end point)
+	 * is moved after the predicted ones.
+	 * If no prediction can be made, the preliminary path part is copied without changes.
+	 * @param preliminaryPathPart The preliminary path part, returned by {@link PathBuilder#createPreliminaryPath()}.
+	 * @param size The physical size in floats of the preliminary path part.
+	 * @param stride Defines the offset from one control point to the next.
+	 * @return The extended preliminary path part. It is important to note, that for performance reasons, each time this method is called, the same buffer will be returned.
+	 */
+	public FloatBuffer extend(FloatBuffer preliminaryPathPart, int size, int stride){
+		resultBuffer = Utils.reallocNativeFloatBuffer(resultBuffer, size + (predictedPointsCount+1)*stride);
+		resultSize = 0;
+		if (size<stride || !bHasSample || horizon<=0 || predictedPointsCount<=0 || !predictor.predict(lastTimestamp + horizon/1000.0, prediction)){
+			for (int i=0;i<size;i++){
+				resultBuffer.put(i, preliminaryPathPart.get(i));
+			}
+			resultSize = size;
+			return resultBuffer;
+		}
+
+		int lastPosition = size - stride;
+		for (int i=0;i<lastPosition;i++){
+			resultBuffer.put(resultSize++, preliminaryPathPart.get(i));
+		}
+		for (int p=1;p<=predictedPointsCount;p++){
+			if (p<predictedPointsCount){
+				predictor.predict(lastTimestamp + horizon*p/predictedPointsCount/1000.0, prediction);
+			} else {
+				predictor.predict(lastTimestamp + horizon/1000.0, prediction);
+			}
+			putPoint(preliminaryPathPart, lastPosition, stride, prediction[0], prediction[1]);
+		}
+		putPoint(preliminaryPathPart, lastPosition, stride, prediction[0], prediction[1]);
+
+		addPendingPrediction(prediction[0], prediction[1], lastTimestamp + horizon/1000.0);
+		return resultBuffer;
+	}
+
+	private void putPoint(FloatBuffer source, int position, int stride, float x, float y){
+		resultBuffer.put(resultSize++, x);
+		resultBuffer.put(resultSize++, y);
+		for (int i=2;i<stride;i++){
+			resultBuffer.put(resultSize++, source.get(position + i));
+		}
+	}
+
+	private void addPendingPrediction(float x, float y, double timestamp){
+		pendingXs[pendingHead] = x;
+		pendingYs[pendingHead] = y;
+		pendingTimestamps[pendingHead] = timestamp;
+		pendingHead = (pendingHead+1)%MAX_PENDING_PREDICTIONS;
+		if (pendingCount<MAX_PENDING_PREDICTIONS){
+			pendingCount++;
+		}
+	}
+
+	/**
+	 * Returns the size of the buffer returned by the last {@link #extend(FloatBuffer, int, int)} call.
+	 * @return The physical size in floats of the extended preliminary path part.
+	 */
+	public int getSize(){
+		return resultSize;
+	}
+
+	/**
+	 * Returns the number of the predictions compared with the real pen trajectory since the last {@link #resetStatistics()} call.
+	 * @return The number of the evaluated predictions.
+	 */
+	public int getPredictionsCount(){
+		return predictionsCount;
+	}
+
+	/**
+	 * Returns the average distance between the predicted and the real pen positions.
+	 * @return The mean error in pixels, or NAN if no prediction has been evaluated.
+	 */
+	public float getMeanError(){
+		return predictionsCount>0?(float)(errorSum/predictionsCount):Float.NaN;
+	}
+
+	/**
+	 * Returns the largest distance between the predicted and the real pen positions.
+	 * @return The maximal error in pixels.
+	 */
+	public float getMaxError(){
+		return maxError;
+	}
+
+	/**
+	 * Returns the distance between the lastly evaluated prediction and the real pen position.
+	 * @return The error in pixels, or NAN if no prediction has been evaluated.
+	 */
+	public float getLastError(){
+		return lastError;
+	}
+}
@@ -0,0 +1,240 @@
+/*
+ * Created by Zahari Pastarmadjiev.
+ * Copyright (c) 2014 Wacom. All rights reserved.
+ */
+
+package com.wacom.ink.path;
+
+import java.nio.FloatBuffer;
+
+import com.wacom.ink.geometry.CatmullRomSpline;
+import com.wacom.ink.utils.Utils;
+
+/**
+ * The PathResampler class reparameterizes the path parts produced by a {@link PathBuilder}, so that the control points are placed at an equal arc-length distance from each other.
+ * Fast strokes produce control points far from each other, while slow strokes produce dense control points.
+ * After resampling the number of control points (and so the cost of the rendering and the intersection) depends only on the length of the path.
+ * <br/>
+ * The control points are placed on the Catmull-Rom spline defined by the control points of the path parts, and all channels (width, alpha, etc.) are evaluated on the spline,
+ * see {@link CatmullRomSpline}. So sparse control points of fast strokes are replaced by dense control points on the same curve, instead of straight line segments.
+ * The resampling is performed incrementally: a segment of the spline is resampled as soon as its four control points have arrived, continuing from where the previous one ended.
+ * The start and the end of the spline are kept and duplicated, so the resampled spline still starts and ends at the input points.
+ * <br/>
+ * The spacing is defined in screen pixels and is divided by the current scale of the view, so a zoomed out view produces fewer control points per path unit.
+ * Typical usage:<br/>
+ * <pre>
+ * FloatBuffer resampled = resampler.resample(part, pathBuilder.getPathPartSize(), bFinish);
+ * pathBuilder.addPathPart(resampled, resampler.getSize());
+ * </pre>
+ */
+public class PathResampler {
+	/**
+	 * The default distance between two control points in screen pixels.
+	 */
+	public final static float DEFAULT_SPACING = 4.0f;
+
+	private final int stride;
+	private float spacing = DEFAULT_SPACING;
+	private float scale = 1.0f;
+
+	private FloatBuffer resultBuffer;
+	private int resultSize;
+
+	// The last four input control points, which define the current segment of the spline.
+	private final float[] window;
+	private final FloatBuffer windowBuffer;
+	private final float[] point;
+	private int inputCount;
+	private float carry;
+	private int emittedCount;
+
+	private final float[] savedWindow;
+	private int savedInputCount;
+	private float savedCarry;
+	private int savedEmittedCount;
+
+	/**
+	 * Constructs a new instance.
+	 * @param stride Defines the offset from one control point to the next. Should be the stride of the path builder.
+	 */
+	public PathResampler(int stride){
+		this.stride = stride;
+		window = new float[4*stride];
+		windowBuffer = FloatBuffer.wrap(window);
+		point = new float[stride];
+		savedWindow = new float[4*stride];
+		resultBuffer = Utils.createNativeFloatBuffer(stride*16);
+	}
+
+	/**
+	 * Resets the instance. After calling this method a new path can be resampled.
+	 */
+	public void reset(){
+		inputCount = 0;
+		carry = 0;
+		emittedCount = 0;
+		resultSize = 0;
+	}
+
+	/**
+	 * Sets the distance between two successive control points.
+	 * @param spacing The distance in screen pixels.
+	 */
+	public void setSpacing(float spacing){
+		if (spacing<=0){
+			throw new IllegalArgumentException("spacing should be greater than 0");
+		}
+		this.spacing = spacing;
+	}
+
+	/**
+	 * Returns the distance between two successive control points.
+	 * @return The distance in screen pixels.
+	 */
+	public float getSpacing(){
+		return spacing;
+	}
+
+	/**
+	 * Sets the scale of the view, where the path is being drawn. The spacing in path coordinates is the spacing in screen pixels divided by the scale.
+	 * The change takes effect with the next path part.
+	 * @param scale The ratio between screen pixels and path units. The default value is 1.
+	 */
+	public void setScale(float scale){
+		if (scale<=0){
+			throw new IllegalArgumentException("scale should be greater than 0");
+		}
+		this.scale = scale;
+	}
+
+	/**
+	 * Returns the scale of the view.
+	 * @return The ratio between screen pixels and path units.
+	 */
+	public float getScale(){
+		return scale;
+	}
+
+	/**
+	 * Resamples the next path part.
+	 * If the bFinish parameter is set to true, the path will be ended at the end of the spline of the part.
+	 * It is important to note that in this case the internal state of the instance will not change, which allows the preliminary path to be resampled as well.
+	 * @param buffer The path part to be resampled.
+	 * @param size The physical size in floats of the path part.
+	 * @param bFinish Should be set to true for the last path part of the path and for preliminary paths.
+	 * @return The resampled control points. It is important to note, that for performance reasons, each time this method is called, the same buffer will be returned.
+	 */
+	public FloatBuffer resample(FloatBuffer buffer, int size, boolean bFinish){
+		int pointsCount = size/stride;
+		float step = spacing/scale;
+		resultSize = 0;
+
+		if (bFinish){
+			savedInputCount = inputCount;
+			savedCarry = carry;
+			savedEmittedCount = emittedCount;
+			System.arraycopy(window, 0, savedWindow, 0, window.length);
+		}
+
+		for (int p=0;p<pointsCount;p++){
+			addPoint(buffer, p*stride, step);
+		}
+
+		if (bFinish){
+			if (inputCount>0){
+				if (inputCount==1){
+					// A single control point, there is no spline to start at.
+					copyFromWindow(0, point);
+					emit(point);
+					emit(point);
+				}
+				// The spline ends at the second to last control point.
+				copyFromWindow(inputCount==1?0:Math.max(1, Math.min(inputCount, 4) - 2), point);
+				// Avoid a duplicate, if the last resampled control point is already at the end, but keep at least four control points.
+				if (emittedCount<3 || resultSize==0 || !isLastEmitted(point)){
+					emit(point);
+				}
+				emit(point);
+			}
+			inputCount = savedInputCount;
+			carry = savedCarry;
+			emittedCount = savedEmittedCount;
+			System.arraycopy(savedWindow, 0, window, 0, window.length);
+		}
+		return resultBuffer;
+	}
+
+	private void addPoint(FloatBuffer buffer, int position, float step){
+		if (inputCount<4){
+			for (int c=0;c<stride;c++){
+				window[inputCount*stride + c] = buffer.get(position+c);
+			}
+		} else {
+			System.arraycopy(window, stride, window, 0, 3*stride);
+			for (int c=0;c<stride;c++){
+				window[3*stride + c] = buffer.get(position+c);
+			}
+		}
+		inputCount++;
+
+		if (inputCount==2){
+			// The spline starts at the second control point.
+			copyFromWindow(1, point);
+			emit(point);
+			emit(point);
+		} else if (inputCount>=4){
+			resampleSegment(step);
+		}
+	}
+
+	private void resampleSegment(float step){
+		float remaining = CatmullRomSpline.getSegmentLength(windowBuffer, 0, stride, 0, 0, 1);
+		if (remaining==0){
+			return;
+		}
+		float t = 0;
+		float distance = step - carry;
+		while (distance<=remaining){
+			float nextT = CatmullRomSpline.getParameterAtLength(windowBuffer, 0, stride, 0, t, distance);
+			for (int c=0;c<stride;c++){
+				point[c] = CatmullRomSpline.evaluate(windowBuffer, 0, stride, c, 0, nextT);
+			}
+			emit(point);
+			remaining -= distance;
+			t = nextT;
+			distance = step;
+		}
+		carry = step - distance + remaining;
+	}
+
+	private void emit(float[] values){
+		if (resultSize + stride>resultBuffer.capacity()){
+			FloatBuffer newBuffer = Utils.createNativeFloatBuffer(Math.max(resultSize + stride, resultBuffer.capacity()*2));
+			resultBuffer.position(0);
+			resultBuffer.limit(resultSize);
+			newBuffer.put(resultBuffer);
+			newBuffer.clear();
+			resultBuffer = newBuffer;
+		}
+		for (int c=0;c<stride;c++){
+			resultBuffer.put(resultSize++, values[c]);
+		}
+		emittedCount++;
+	}
+
+	private boolean isLastEmitted(float[] values){
+		return resultBuffer.get(resultSize-stride)==values[0] && resultBuffer.get(resultSize-stride+1)==values[1];
+	}
+
+	private void copyFromWindow(int index, float[] values){
+		System.arraycopy(window, index*stride, values, 0, stride);
+	}
+
+	/**
+	 * Returns the size of the buffer returned by the last {@link #resample(FloatBuffer, int, boolean)} call.
+	 * @return The physical size in floats of the resampled control points.
+	 */
+	public int getSize(){
+		return resultSize;
+	}
+}
@@ -0,0 +1,293 @@
+/*
+ * Created by Zahari Pastarmadjiev.
+ * Copyright (c) 2014 Wacom. All rights reserved.
+ */
+
+package com.wacom.ink.path;
+
+import java.nio.FloatBuffer;
+
+import com.wacom.ink.utils.Utils;
+
+/**
+ * The PathSimplifier class removes redundant control points from the path parts produced by a {@link PathBuilder},
+ * before they are added to the path with the {@link PathBuilder#addPathPart(FloatBuffer, int)} method.
+ * <br/>
+ * The simplification is performed incrementally on each path part. A control point is dropped, if it and all previously dropped points since the last kept one
+ * lie within the configured tolerance from the segment between the last kept control point and the next one.
+ * Since the decision for a control point depends on its successor, the last control point of a path part is held back until the next path part arrives,
+ * or until a path part is passed with the bFinish parameter set to true.
+ * <br/>
+ * The first two and the last two control points of a path (the Catmull-Rom end points) are always kept.
+ * By default only the x and y coordinates are considered. The other channels (for example width and alpha) can be included with the {@link #setChannelTolerance(int, float)} method.
+ * <br/>
+ * Typical usage:<br/>
+ * <pre>
+ * FloatBuffer simplified = simplifier.simplify(part, pathBuilder.getPathPartSize(), bFinish);
+ * pathBuilder.addPathPart(simplified, simplifier.getSize());
+ * </pre>
+ */
+public class PathSimplifier {
+	/**
+	 * The maximal number of consecutive control points, which can be replaced by a single segment.
+	 */
+	public final static int MAX_DROPPED_POINTS = 32;
+
+	private final int stride;
+	private float tolerance;
+	private final float[] channelTolerances;
+
+	private FloatBuffer resultBuffer;
+	private int resultSize;
+
+	private final float[] anchor;
+	private final float[] candidate;
+	private final float[] dropped;
+	private int keptCount;
+	private boolean bHasCandidate;
+	private int droppedCount;
+
+	private final float[] savedAnchor;
+	private final float[] savedCandidate;
+	private final float[] savedDropped;
+	private int savedKeptCount;
+	private boolean bSavedHasCandidate;
+	private int savedDroppedCount;
+
+	private int inputPointsCount;
+	private int outputPointsCount;
+
+	/**
+	 * Constructs a new instance.
+	 * @param stride Defines the offset from one control point to the next. Should be the stride of the path builder.
+	 * @param tolerance The maximal distance in pixels, which a dropped control point may have from the resulting path.
+	 */
+	public PathSimplifier(int stride, float tolerance){
+		this.stride = stride;
+		this.tolerance = tolerance;
+
+		channelTolerances = new float[stride];
+		for (int i=0;i<stride;i++){
+			channelTolerances[i] = Float.NaN;
+		}
+
+		anchor = new float[stride];
+		candidate = new float[stride];
+		dropped = new float[(MAX_DROPPED_POINTS+1)*stride];
+		savedAnchor = new float[stride];
+		savedCandidate = new float[stride];
+		savedDropped = new float[(MAX_DROPPED_POINTS+1)*stride];
+
+		resultBuffer = Utils.createNativeFloatBuffer(stride*8);
+	}
+
+	/**
+	 * Resets the instance. After calling this method a new path can be simplified.
+	 */
+	public void reset(){
+		keptCount = 0;
+		bHasCandidate = false;
+		droppedCount = 0;
+		resultSize = 0;
+		inputPointsCount = 0;
+		outputPointsCount = 0;
+	}
+
+	/**
+	 * Sets the maximal distance in pixels, which a dropped control point may have from the resulting path.
+	 * @param tolerance The tolerance in pixels. 0 disables the simplification of curved segments.
+	 */
+	public void setTolerance(float tolerance){
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Returns the maximal distance in pixels, which a dropped control point may have from the resulting path.
+	 * @return The tolerance in pixels.
+	 */
+	public float getTolerance(){
+		return tolerance;
+	}
+
+	/**
+	 * Includes a channel other than x and y in the test. A control point will be dropped only if the value of the channel differs
+	 * by no more than the given tolerance from the value linearly interpolated between its neighbours.
+	 * @param channelIndex The index of the channel in a control point, for example 2 for the width when the path builder generates it.
+	 * @param tolerance The tolerance for the channel. If set to NAN the channel will not be considered.
+	 */
+	public void setChannelTolerance(int channelIndex, float tolerance){
+		if (channelIndex<2 || channelIndex>=stride){
+			throw new IllegalArgumentException("Invalid channel index: " + channelIndex);
+		}
+		channelTolerances[channelIndex] = tolerance;
+	}
+
+	/**
+	 * Simplifies the next path part.
+	 * If the bFinish parameter is set to true, all control points held back will be returned as well.
+	 * It is important to note that in this case the internal state of the instance will not change, which allows the preliminary path to be simplified as well.
+	 * @param buffer The path part to be simplified.
+	 * @param size The physical size in floats of the path part.
+	 * @param bFinish Should be set to true for the last path part of the path and for preliminary paths.
+	 * @return The simplified control points. It is important to note, that for performance reasons, each time this method is called, the same buffer will be returned.
+	 */
+	public FloatBuffer simplify(FloatBuffer buffer, int size, boolean bFinish){
+		resultSize = 0;
+		int pointsCount = size/stride;
+		resultBuffer = Utils.reallocNativeFloatBuffer(resultBuffer, size + stride);
+
+		if (bFinish){
+			saveState();
+			int lastPosition = (pointsCount-1)*stride;
+			for (int position=0;position<lastPosition;position+=stride){
+				addPoint(buffer, position);
+			}
+			if (bHasCandidate){
+				emit(candidate, 0);
+			}
+			if (pointsCount>0){
+				emit(buffer, lastPosition);
+			}
+			restoreState();
+		} else {
+			inputPointsCount += pointsCount;
+			for (int position=0;position<pointsCount*stride;position+=stride){
+				addPoint(buffer, position);
+			}
+			outputPointsCount += resultSize/stride;
+		}
+		return resultBuffer;
+	}
+
+	/**
+	 * Returns the size of the buffer returned by the last {@link #simplify(FloatBuffer, int, boolean)} call.
+	 * @return The physical size in floats of the simplified control points.
+	 */
+	public int getSize(){
+		return resultSize;
+	}
+
+	/**
+	 * Returns the number of control points passed to the simplifier since the last reset, without the preliminary and final path parts.
+	 * @return The number of control points.
+	 */
+	public int getInputPointsCount(){
+		return inputPointsCount;
+	}
+
+	/**
+	 * Returns the number of control points returned by the simplifier since the last reset, without the preliminary and final path parts.
+	 * @return The number of control points.
+	 */
+	public int getOutputPointsCount(){
+		return outputPointsCount;
+	}
+
+	private void addPoint(FloatBuffer buffer, int position){
+		if (keptCount<2){
+			emit(buffer, position);
+			copy(buffer, position, anchor);
+			return;
+		}
+		if (!bHasCandidate){
+			copy(buffer, position, candidate);
+			bHasCandidate = true;
+			return;
+		}
+		if (droppedCount<MAX_DROPPED_POINTS && canDrop(buffer, position)){
+			System.arraycopy(candidate, 0, dropped, droppedCount*stride, stride);
+			droppedCount++;
+		} else {
+			emit(candidate, 0);
+			System.arraycopy(candidate, 0, anchor, 0, stride);
+			droppedCount = 0;
+		}
+		copy(buffer, position, candidate);
+	}
+
+	private boolean canDrop(FloatBuffer buffer, int position){
+		if (!isWithinTolerance(candidate, 0, buffer, position)){
+			return false;
+		}
+		for (int i=0;i<droppedCount;i++){
+			if (!isWithinTolerance(dropped, i*stride, buffer, position)){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean isWithinTolerance(float[] points, int offset, FloatBuffer buffer, int position){
+		float ax = anchor[0];
+		float ay = anchor[1];
+		float dx = buffer.get(position) - ax;
+		float dy = buffer.get(position+1) - ay;
+		float px = points[offset] - ax;
+		float py = points[offset+1] - ay;
+
+		float lengthSquared = dx*dx + dy*dy;
+		float t = 0;
+		if (lengthSquared>0){
+			t = (px*dx + py*dy)/lengthSquared;
+			if (t<0){
+				t = 0;
+			} else if (t>1){
+				t = 1;
+			}
+		}
+		float ex = px - t*dx;
+		float ey = py - t*dy;
+		if (ex*ex + ey*ey > tolerance*tolerance){
+			return false;
+		}
+
+		for (int c=2;c<stride;c++){
+			float channelTolerance = channelTolerances[c];
+			if (!Float.isNaN(channelTolerance)){
+				float value = anchor[c] + t*(buffer.get(position+c) - anchor[c]);
+				if (Math.abs(points[offset+c] - value) > channelTolerance){
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private void emit(FloatBuffer buffer, int position){
+		for (int i=0;i<stride;i++){
+			resultBuffer.put(resultSize++, buffer.get(position+i));
+		}
+		keptCount++;
+	}
+
+	private void emit(float[] point, int offset){
+		for (int i=0;i<stride;i++){
+			resultBuffer.put(resultSize++, point[offset+i]);
+		}
+		keptCount++;
+	}
+
+	private void copy(FloatBuffer buffer, int position, float[] point){
+		for (int i=0;i<stride;i++){
+			point[i] = buffer.get(position+i);
+		}
+	}
+
+	private void saveState(){
+		System.arraycopy(anchor, 0, savedAnchor, 0, stride);
+		System.arraycopy(candidate, 0, savedCandidate, 0, stride);
+		System.arraycopy(dropped, 0, savedDropped, 0, droppedCount*stride);
+		savedKeptCount = keptCount;
+		bSavedHasCandidate = bHasCandidate;
+		savedDroppedCount = droppedCount;
+	}
+
+	private void restoreState(){
+		System.arraycopy(savedAnchor, 0, anchor, 0, stride);
+		System.arraycopy(savedCandidate, 0, candidate, 0, stride);
+		System.arraycopy(savedDropped, 0, dropped, 0, savedDroppedCount*stride);
+		keptCount = savedKeptCount;
+		bHasCandidate = bSavedHasCandidate;
+		droppedCount = savedDroppedCount;
+	}
+}
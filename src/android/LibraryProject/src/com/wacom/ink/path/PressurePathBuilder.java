@@ -37,7 +37,7 @@ public class PressurePathBuilder extends PathBuilder{
 	public FloatBuffer beginPath(float x, float y, float pressure) {
 		beginPath();
 		nativeBeginPath(handle, x, y, pressure);
-		return getPathPartBuffer();
+		return updatePathPart();
 	}
 
 	/**
@@ -50,7 +50,7 @@ public class PressurePathBuilder extends PathBuilder{
 	 */
 	public FloatBuffer addPoint(float x, float y, float pressure) {
 		nativeAddPoint(handle, x, y, pressure);
-		return getPathPartBuffer();
+		return updatePathPart();
 	}
 
 	/**
@@ -63,7 +63,13 @@ public class PressurePathBuilder extends PathBuilder{
 	 */
 	public FloatBuffer endPath(float x, float y, float pressure) {
 		nativeEndPath(handle, x, y, pressure);
-		return getPathPartBuffer();
+		bFinished = true;
+		return updatePathPart();
+	}
+	
+	@Override
+	protected void addInputPoint(float x, float y, float value) {
+		nativeAddPoint(handle, x, y, value);
 	}
 	
 	@Override
@@ -80,5 +86,8 @@ public class PressurePathBuilder extends PathBuilder{
 	public void setNormalizationConfig(float minValue, float maxValue) {
 		nativeSetNormalizationConfig(handle, minValue, maxValue);
 	}
-
+	
+	static { 
+		loadNativeLibrary();
+	}
 }
@@ -0,0 +1,116 @@
+/*
+ * Created by Zahari Pastarmadjiev.
+ * Copyright (c) 2014 Wacom. All rights reserved.
+ */
+
+package com.wacom.ink.path;
+
+import com.wacom.ink.path.PathBuilder.PropertyFunction;
+
+/**
+ * The PropertyFunctionTable class is a precomputed lookup table of a path property (width or opacity) over the normalized input range [0, 1].
+ * <br/>
+ * A property config, consisting of a {@link PropertyFunction}, its parameter, the minimum and maximum property values and the flip flag,
+ * is compiled once into equally spaced samples. After that the property value for any normalized input is evaluated with a linear interpolation
+ * between two samples, without calling pow, cos or exp per control point.
+ * <br/>
+ * Arbitrary response curves can be compiled with {@link #compile(float[], int, float, float, boolean)} and are evaluated at the same cost as the built-in functions.
+ */
+public class PropertyFunctionTable {
+	/**
+	 * The default number of the intervals of the table.
+	 */
+	public final static int DEFAULT_RESOLUTION = 256;
+
+	private final int resolution;
+	private final float[] values;
+
+	/**
+	 * Constructs a new instance with the default resolution. The table evaluates to 0 until it is compiled.
+	 */
+	public PropertyFunctionTable(){
+		this(DEFAULT_RESOLUTION);
+	}
+
+	/**
+	 * Constructs a new instance. The table evaluates to 0 until it is compiled.
+	 * @param resolution The number of the intervals of the table. Greater values give more precise results for functions with steep slopes.
+	 */
+	public PropertyFunctionTable(int resolution){
+		if (resolution<1){
+			throw new IllegalArgumentException("resolution should be at least 1");
+		}
+		this.resolution = resolution;
+		values = new float[resolution+1];
+	}
+
+	/**
+	 * Compiles a property config into the table.
+	 * The parameters have the same meaning as in {@link PathBuilder#setPropertyConfig(PathBuilder.PropertyName, float, float, float, float, PropertyFunction, float, boolean)}.
+	 * @param function The function that will convert the input into a property value.
+	 * @param functionParameter The parameter of the property function.
+	 * @param minValue The minimum property value.
+	 * @param maxValue The maximum property value.
+	 * @param bShouldFlip If true, the maximum property value corresponds to the maximum input value.
+	 */
+	public void compile(PropertyFunction function, float functionParameter, float minValue, float maxValue, boolean bShouldFlip){
+		for (int i=0;i<=resolution;i++){
+			float y = function.evaluate((float)i/resolution, functionParameter);
+			values[i] = propertyValue(y, minValue, maxValue, bShouldFlip);
+		}
+	}
+
+	/**
+	 * Compiles a custom response curve into the table.
+	 * @param curve The values of the curve in the range from 0 to 1, sampled at equally spaced normalized inputs from 0 to 1 (both inclusive).
+	 * @param count The number of the samples of the curve, at least 2.
+	 * @param minValue The minimum property value.
+	 * @param maxValue The maximum property value.
+	 * @param bShouldFlip If true, the curve value 1 corresponds to the maximum property value.
+	 */
+	public void compile(float[] curve, int count, float minValue, float maxValue, boolean bShouldFlip){
+		if (count<2){
+			throw new IllegalArgumentException("The curve should have at least 2 samples");
+		}
+		for (int i=0;i<=resolution;i++){
+			float position = (float)i*(count-1)/resolution;
+			int index = Math.min((int)position, count-2);
+			float t = position - index;
+			float y = curve[index] + (curve[index+1] - curve[index])*t;
+			values[i] = propertyValue(y, minValue, maxValue, bShouldFlip);
+		}
+	}
+
+	private static float propertyValue(float y, float minValue, float maxValue, boolean bShouldFlip){
+		if (!bShouldFlip){
+			y = 1.0f - y;
+		}
+		return minValue + (maxValue - minValue)*y;
+	}
+
+	/**
+	 * Evaluates the property for a normalized input value.
+	 * @param normalizedValue The normalized input value. Values outside of the range from 0 to 1 are clamped.
+	 * @return The property value.
+	 */
+	public float evaluate(float normalizedValue){
+		float position = normalizedValue*resolution;
+		if (!(position>0)){
+			return values[0];
+		}
+		if (position>=resolution){
+			return values[resolution];
+		}
+		int index = (int)position;
+		float t = position - index;
+		return values[index] + (values[index+1] - values[index])*t;
+	}
+
+	/**
+	 * Returns the number of the intervals of the table.
+	 * @return The resolution.
+	 */
+	public int getResolution(){
+		return resolution;
+	}
+}
@@ -0,0 +1,205 @@
+/*
+ * Created by Zahari Pastarmadjiev.
+ * Copyright (c) 2014 Wacom. All rights reserved.
+ */
+
+package com.wacom.ink.path;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+
+/**
+ * The SegmentedPath class stores the control points of a path in a list of fixed size chunks instead of a single contiguous buffer.
+ * Appending control points never copies the already stored ones, so the cost of building a path doesn't grow with its length.
+ * <br/>
+ * Each chunk, except the first one, starts with the last three control points of the previous chunk.
+ * This way every chunk is a valid Catmull-Rom path on its own, and drawing the chunks one after another
+ * (for example with {@link com.wacom.ink.rasterization.InkCanvas#drawStroke(com.wacom.ink.rasterization.StrokePaint, com.wacom.ink.rasterization.StrokeJoin, SegmentedPath, float, float) InkCanvas.drawStroke})
+ * produces exactly the same stroke as drawing the whole path at once.
+ * <br/>
+ * A path part is always appended to a single chunk, so the control points affected by the last append are contiguous in the last chunk.
+ * The allocated chunks are reused after {@link #reset(int)}.
+ */
+public class SegmentedPath {
+	/**
+	 * The number of control points, which each chunk shares with the previous one.
+	 */
+	public final static int OVERLAP_POINTS = 3;
+
+	private final int chunkCapacity;
+	private int stride;
+
+	private final ArrayList<FloatBuffer> chunks = new ArrayList<FloatBuffer>();
+	private int[] chunkSizes = new int[8];
+	private int[] chunkOverlapSizes = new int[8];
+	private int chunkCount;
+	private int size;
+
+	/**
+	 * Constructs a new instance.
+	 * @param chunkPointsCount The number of the control points, which a single chunk can hold.
+	 * @param stride Defines the offset from one control point to the next.
+	 */
+	public SegmentedPath(int chunkPointsCount, int stride){
+		if (chunkPointsCount<=OVERLAP_POINTS){
+			throw new IllegalArgumentException("chunkPointsCount should be greater than " + OVERLAP_POINTS);
+		}
+		this.chunkCapacity = chunkPointsCount;
+		this.stride = stride;
+	}
+
+	/**
+	 * Returns the number of the control points, which a single chunk can hold.
+	 */
+	public int getChunkPointsCount(){
+		return chunkCapacity;
+	}
+
+	/**
+	 * Removes all control points. The allocated chunks are kept for reuse.
+	 * @param stride The stride of the next path.
+	 */
+	public void reset(int stride){
+		this.stride = stride;
+		chunkCount = 0;
+		size = 0;
+	}
+
+	/**
+	 * Appends control points to the path.
+	 * @param points The control points to be appended.
+	 * @param position The position in the points buffer of the first value to be appended.
+	 * @param size The physical size in floats of the control points to be appended.
+	 */
+	public void append(FloatBuffer points, int position, int size){
+		if (size<=0){
+			return;
+		}
+		if (chunkCount==0){
+			openChunk(size);
+		} else if (chunkSizes[chunkCount-1] + size > chunks.get(chunkCount-1).capacity()){
+			FloatBuffer previousChunk = chunks.get(chunkCount-1);
+			int previousSize = chunkSizes[chunkCount-1];
+			int overlapSize = Math.min(previousSize, OVERLAP_POINTS*stride);
+			openChunk(overlapSize + size);
+			FloatBuffer chunk = chunks.get(chunkCount-1);
+			for (int i=0;i<overlapSize;i++){
+				chunk.put(i, previousChunk.get(previousSize - overlapSize + i));
+			}
+			chunkSizes[chunkCount-1] = overlapSize;
+			chunkOverlapSizes[chunkCount-1] = overlapSize;
+		}
+		FloatBuffer chunk = chunks.get(chunkCount-1);
+		int chunkSize = chunkSizes[chunkCount-1];
+		for (int i=0;i<size;i++){
+			chunk.put(chunkSize + i, points.get(position + i));
+		}
+		chunkSizes[chunkCount-1] = chunkSize + size;
+		this.size += size;
+	}
+
+	private void openChunk(int minSize){
+		int capacity = Math.max(chunkCapacity*stride, minSize);
+		if (chunkCount<chunks.size()){
+			if (chunks.get(chunkCount).capacity()<capacity){
+				chunks.set(chunkCount, createChunk(capacity));
+			}
+		} else {
+			chunks.add(createChunk(capacity));
+		}
+		if (chunkCount==chunkSizes.length){
+			chunkSizes = grow(chunkSizes);
+			chunkOverlapSizes = grow(chunkOverlapSizes);
+		}
+		chunkSizes[chunkCount] = 0;
+		chunkOverlapSizes[chunkCount] = 0;
+		chunkCount++;
+	}
+
+	private static int[] grow(int[] array){
+		int[] newArray = new int[array.length*2];
+		System.arraycopy(array, 0, newArray, 0, array.length);
+		return newArray;
+	}
+
+	private static FloatBuffer createChunk(int capacity){
+		return ByteBuffer.allocateDirect(capacity*Float.SIZE/Byte.SIZE).order(ByteOrder.nativeOrder()).asFloatBuffer();
+	}
+
+	/**
+	 * Copies all control points into a single contiguous buffer, skipping the control points shared between the chunks.
+	 * @param destination The destination buffer. It should have at least {@link #getSize()} floats remaining after the position.
+	 * @param position The position in the destination buffer to write to.
+	 * @return The number of floats written.
+	 */
+	public int copyTo(FloatBuffer destination, int position){
+		int written = 0;
+		for (int c=0;c<chunkCount;c++){
+			FloatBuffer chunk = chunks.get(c);
+			for (int i=chunkOverlapSizes[c];i<chunkSizes[c];i++){
+				destination.put(position + written++, chunk.get(i));
+			}
+		}
+		return written;
+	}
+
+	/**
+	 * Returns the number of the chunks holding the path.
+	 * @return The chunks count.
+	 */
+	public int getChunkCount(){
+		return chunkCount;
+	}
+
+	/**
+	 * Returns the chunk with the given index. The control points of the chunk start at position 0.
+	 * @param index The index of the chunk.
+	 * @return a float buffer
+	 */
+	public FloatBuffer getChunk(int index){
+		return chunks.get(index);
+	}
+
+	/**
+	 * Returns the size of the chunk with the given index, including the control points shared with the previous chunk.
+	 * @param index The index of the chunk.
+	 * @return The physical size in floats of the chunk.
+	 */
+	public int getChunkSize(int index){
+		return chunkSizes[index];
+	}
+
+	/**
+	 * Returns the last chunk, which holds the most recently appended control points.
+	 * @return a float buffer or null if the path is empty
+	 */
+	public FloatBuffer getLastChunk(){
+		return chunkCount>0?chunks.get(chunkCount-1):null;
+	}
+
+	/**
+	 * Returns the size of the last chunk.
+	 * @return The physical size in floats of the last chunk.
+	 */
+	public int getLastChunkSize(){
+		return chunkCount>0?chunkSizes[chunkCount-1]:0;
+	}
+
+	/**
+	 * Returns the size of the whole path, without the control points shared between the chunks.
+	 * @return The physical size in floats of the path.
+	 */
+	public int getSize(){
+		return size;
+	}
+
+	/**
+	 * Returns the stride of the path.
+	 * @return The offset from one control point to the next.
+	 */
+	public int getStride(){
+		return stride;
+	}
+}
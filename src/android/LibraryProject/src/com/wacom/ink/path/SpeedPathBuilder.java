@@ -12,6 +12,7 @@ import java.nio.FloatBuffer;
  * 
  */
 public class SpeedPathBuilder extends PathBuilder{
+	private double beginTimestamp;
 	
 	/**
 	 * Constructs a new instance.
@@ -37,8 +38,9 @@ public class SpeedPathBuilder extends PathBuilder{
 	 */
 	public FloatBuffer beginPath(float x, float y, double timestamp) {
 		beginPath();
+		beginTimestamp = timestamp;
 		nativeBeginPath(handle, x, y, timestamp);
-		return getPathPartBuffer();
+		return updatePathPart();
 	}
 
 	/**
@@ -52,7 +54,7 @@ public class SpeedPathBuilder extends PathBuilder{
 	 */
 	public FloatBuffer addPoint(float x, float y, double timestamp) {
 		nativeAddPoint(handle, x, y, timestamp);
-		return getPathPartBuffer();
+		return updatePathPart();
 	}
 
 	/**
@@ -66,7 +68,21 @@ public class SpeedPathBuilder extends PathBuilder{
 	 */
 	public FloatBuffer endPath(float x, float y, double timestamp) {
 		nativeEndPath(handle, x, y, timestamp);
-		return getPathPartBuffer();
+		bFinished = true;
+		return updatePathPart();
+	}
+	
+	/**
+	 * Returns the timestamp passed to {@link #beginPath(float, float, double)}. The time values of the points passed to {@link #addPoints(FloatBuffer, int)} are relative to it.
+	 * @return The timestamp in seconds.
+	 */
+	public double getBeginTimestamp(){
+		return beginTimestamp;
+	}
+	
+	@Override
+	protected void addInputPoint(float x, float y, float value) {
+		nativeAddPoint(handle, x, y, beginTimestamp + value);
 	}
 	
 	@Override
@@ -83,5 +99,8 @@ public class SpeedPathBuilder extends PathBuilder{
 	public void setNormalizationConfig(float minValue, float maxValue) {
 		nativeSetNormalizationConfig(handle, density*minValue, density*maxValue);
 	}
-
+	
+	static { 
+		loadNativeLibrary();
+	}
 }
@@ -0,0 +1,303 @@
+/*
+ * Created by Zahari Pastarmadjiev.
+ * Copyright (c) 2014 Wacom. All rights reserved.
+ */
+
+package com.wacom.ink.path;
+
+import java.nio.FloatBuffer;
+
+import com.wacom.ink.geometry.CatmullRomSpline;
+import com.wacom.ink.utils.Utils;
+
+/**
+ * The StrokeCompressor class refits a finished path with a subset of its control points, such that the Catmull-Rom spline through the kept points
+ * stays within a maximal deviation from the original spline, both in position and in width.
+ * It is intended for offline processing, for example before encoding a stroke with {@link com.wacom.ink.serialization.InkEncoder} or storing it for a long time.
+ * Unlike the {@link PathSimplifier}, which decides locally while the path is being built, the compressor measures the error of the refitted spline itself.
+ * <br/>
+ * The compression starts with the first and the last control points of the path and repeatedly inserts the worst fitted original control point into each segment,
+ * which deviates too much, until all segments fit. The deviation is measured at the original control points and at three points within each original segment.
+ * <br/>
+ * The path is expected in the format produced by the path builders: x and y at offsets 0 and 1 of each control point, with the first and the last control points duplicated.
+ * All channels of the kept control points (for example alpha) are preserved.
+ * <br/>
+ * Typical usage:<br/>
+ * <pre>
+ * FloatBuffer compressed = compressor.compress(pathBuilder.getPathBuffer(), 0, pathBuilder.getPathSize());
+ * inkEncoder.encodePath(2, compressed, compressor.getSize(), stride, width, color, 0, 1);
+ * </pre>
+ */
+public class StrokeCompressor {
+	/**
+	 * The number of the samples of each refitted segment, used to measure the distance to it.
+	 */
+	public final static int SEGMENT_SAMPLES = 16;
+
+	// The number of the points of each original segment, where the deviation is measured.
+	private final static int ERROR_SAMPLES = 4;
+
+	private final int stride;
+	private float maxDeviation;
+	private int widthChannel = -1;
+	private float maxWidthDeviation = Float.NaN;
+
+	private boolean[] kept;
+	private int[] keptIndices;
+	private int[] insertions;
+	private FloatBuffer keptBuffer;
+	private final float[] sampleX = new float[SEGMENT_SAMPLES+1];
+	private final float[] sampleY = new float[SEGMENT_SAMPLES+1];
+	private final float[] sampleWidth = new float[SEGMENT_SAMPLES+1];
+
+	private float worstDeviation;
+	private int resultSize;
+	private int inputPointsCount;
+	private int outputPointsCount;
+
+	/**
+	 * Constructs a new instance.
+	 * @param stride The stride of the paths.
+	 * @param maxDeviation The maximal distance between the original and the compressed spline, in path units.
+	 */
+	public StrokeCompressor(int stride, float maxDeviation){
+		if (stride<2){
+			throw new IllegalArgumentException("stride should be at least 2");
+		}
+		this.stride = stride;
+		this.maxDeviation = maxDeviation;
+		kept = new boolean[64];
+		keptIndices = new int[64];
+		insertions = new int[64];
+		keptBuffer = Utils.createNativeFloatBuffer(64*stride);
+	}
+
+	/**
+	 * Sets the maximal distance between the original and the compressed spline.
+	 * @param maxDeviation The distance in path units.
+	 */
+	public void setMaxDeviation(float maxDeviation){
+		this.maxDeviation = maxDeviation;
+	}
+
+	/**
+	 * Includes the width into the error measurement.
+	 * @param widthChannel The offset of the width within a control point, or -1 to ignore the width.
+	 * @param maxWidthDeviation The maximal difference between the original and the compressed width.
+	 */
+	public void setWidthTolerance(int widthChannel, float maxWidthDeviation){
+		if (widthChannel>=stride){
+			throw new IllegalArgumentException("widthChannel should be less than the stride");
+		}
+		this.widthChannel = widthChannel;
+		this.maxWidthDeviation = maxWidthDeviation;
+	}
+
+	/**
+	 * Compresses a finished path.
+	 * @param path The control points of the path.
+	 * @param position The position of the first control point in the buffer.
+	 * @param size The physical size in floats of the path.
+	 * @return The control points of the compressed path. It is important to note, that for performance reasons, each time this method is called, the same buffer will be returned.
+	 */
+	public FloatBuffer compress(FloatBuffer path, int position, int size){
+		int n = size/stride;
+		inputPointsCount = n;
+		ensureCapacity(n);
+		if (n<5){
+			// There is nothing to drop: only the end points and at most one point between them.
+			for (int i=0;i<n*stride;i++){
+				keptBuffer.put(i, path.get(position + i));
+			}
+			return finish(n, 0);
+		}
+
+		for (int i=0;i<n;i++){
+			kept[i] = false;
+		}
+		kept[1] = true;
+		kept[n-2] = true;
+
+		int keptCount;
+		while (true){
+			keptCount = buildKeptBuffer(path, position, n);
+			int insertionsCount = 0;
+			worstDeviation = 0;
+			// The kept point j+1 of the kept buffer is the original point keptIndices[j].
+			for (int j=0;j+1<keptCount;j++){
+				int from = keptIndices[j];
+				int to = keptIndices[j+1];
+				int worst = findWorstPoint(path, position, n, j, from, to);
+				if (worst>=0){
+					insertions[insertionsCount++] = worst;
+				}
+			}
+			if (insertionsCount==0){
+				break;
+			}
+			for (int i=0;i<insertionsCount;i++){
+				kept[insertions[i]] = true;
+			}
+		}
+		return finish(keptCount+2, worstDeviation);
+	}
+
+	private FloatBuffer finish(int pointsCount, float deviation){
+		outputPointsCount = pointsCount;
+		resultSize = pointsCount*stride;
+		worstDeviation = deviation;
+		keptBuffer.position(0);
+		return keptBuffer;
+	}
+
+	private int buildKeptBuffer(FloatBuffer path, int position, int n){
+		int keptCount = 0;
+		copyPoint(path, position, 0, 0);
+		for (int i=1;i<n-1;i++){
+			if (kept[i]){
+				keptIndices[keptCount] = i;
+				keptCount++;
+				copyPoint(path, position, i, keptCount);
+			}
+		}
+		copyPoint(path, position, n-1, keptCount+1);
+		return keptCount;
+	}
+
+	private void copyPoint(FloatBuffer path, int position, int pointIndex, int keptIndex){
+		for (int c=0;c<stride;c++){
+			keptBuffer.put(keptIndex*stride + c, path.get(position + pointIndex*stride + c));
+		}
+	}
+
+	/**
+	 * Measures the deviation of the original spline between the original points from and to from the refitted segment.
+	 * @return The index of the original point, which should be kept, or -1 if the segment fits.
+	 */
+	private int findWorstPoint(FloatBuffer path, int position, int n, int segment, int from, int to){
+		for (int k=0;k<=SEGMENT_SAMPLES;k++){
+			float t = (float)k/SEGMENT_SAMPLES;
+			sampleX[k] = CatmullRomSpline.evaluate(keptBuffer, 0, stride, 0, segment, t);
+			sampleY[k] = CatmullRomSpline.evaluate(keptBuffer, 0, stride, 1, segment, t);
+			if (widthChannel>=0){
+				sampleWidth[k] = CatmullRomSpline.evaluate(keptBuffer, 0, stride, widthChannel, segment, t);
+			}
+		}
+		int worst = -1;
+		float worstError = 1.0f;
+		// The original segment s is the curve from the original point s+1 to the original point s+2.
+		for (int s=from-1;s<to-1;s++){
+			for (int k=1;k<=ERROR_SAMPLES;k++){
+				float t = (float)k/ERROR_SAMPLES;
+				float error;
+				if (k==ERROR_SAMPLES){
+					if (s+2==to){
+						break;
+					}
+					int index = position + (s+2)*stride;
+					error = measure(path.get(index), path.get(index + 1), widthChannel>=0?path.get(index + widthChannel):0);
+				} else {
+					error = measure(CatmullRomSpline.evaluate(path, position, stride, 0, s, t),
+							CatmullRomSpline.evaluate(path, position, stride, 1, s, t),
+							widthChannel>=0?CatmullRomSpline.evaluate(path, position, stride, widthChannel, s, t):0);
+				}
+				if (error>worstError){
+					worstError = error;
+					worst = pointToKeep(s, t, from, to, n);
+				}
+			}
+		}
+		return worst;
+	}
+
+	private int pointToKeep(int segment, float t, int from, int to, int n){
+		if (to - from>1){
+			// Keep the nearest original point between from and to.
+			int nearest = t<0.5f?segment+1:segment+2;
+			if (nearest==from){
+				return nearest + 1;
+			} else if (nearest==to){
+				return nearest - 1;
+			}
+			return nearest;
+		}
+		// There is no original point between from and to, so the refitted segment differs only because of the different neighbors.
+		if (from>1 && !kept[from-1]){
+			return from-1;
+		} else if (to<n-2 && !kept[to+1]){
+			return to+1;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the error of a point relative to the tolerances: values greater than 1 are out of the tolerances.
+	 */
+	private float measure(float x, float y, float width){
+		float minDistance = Float.MAX_VALUE;
+		float nearestWidth = 0;
+		for (int k=0;k<SEGMENT_SAMPLES;k++){
+			float dx = sampleX[k+1] - sampleX[k];
+			float dy = sampleY[k+1] - sampleY[k];
+			float lengthSquared = dx*dx + dy*dy;
+			float t = 0;
+			if (lengthSquared>0){
+				t = Math.max(0, Math.min(1, ((x - sampleX[k])*dx + (y - sampleY[k])*dy)/lengthSquared));
+			}
+			float ex = sampleX[k] + dx*t - x;
+			float ey = sampleY[k] + dy*t - y;
+			float distance = ex*ex + ey*ey;
+			if (distance<minDistance){
+				minDistance = distance;
+				nearestWidth = sampleWidth[k] + (sampleWidth[k+1] - sampleWidth[k])*t;
+			}
+		}
+		float deviation = (float)Math.sqrt(minDistance);
+		worstDeviation = Math.max(worstDeviation, deviation);
+		float error = maxDeviation>0?deviation/maxDeviation:(deviation>0?Float.MAX_VALUE:0);
+		if (widthChannel>=0 && !Float.isNaN(maxWidthDeviation)){
+			float widthDeviation = Math.abs(nearestWidth - width);
+			error = Math.max(error, maxWidthDeviation>0?widthDeviation/maxWidthDeviation:(widthDeviation>0?Float.MAX_VALUE:0));
+		}
+		return error;
+	}
+
+	private void ensureCapacity(int pointsCount){
+		if (kept.length<pointsCount){
+			kept = new boolean[pointsCount];
+			keptIndices = new int[pointsCount];
+			insertions = new int[pointsCount];
+		}
+		keptBuffer = Utils.reallocNativeFloatBuffer(keptBuffer, pointsCount*stride);
+	}
+
+	/**
+	 * Returns the size of the compressed path.
+	 * @return The physical size in floats of the buffer returned by the last {@link #compress(FloatBuffer, int, int)} call.
+	 */
+	public int getSize(){
+		return resultSize;
+	}
+
+	/**
+	 * Returns the maximal deviation of the original spline from the compressed one, measured during the last compression.
+	 * @return The deviation in path units.
+	 */
+	public float getDeviation(){
+		return worstDeviation;
+	}
+
+	/**
+	 * Returns the number of the control points of the last compressed path.
+	 */
+	public int getInputPointsCount(){
+		return inputPointsCount;
+	}
+
+	/**
+	 * Returns the number of the control points of the last compression result.
+	 */
+	public int getOutputPointsCount(){
+		return outputPointsCount;
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * Created by Zahari Pastarmadjiev.
+ * Copyright (c) 2014 Wacom. All rights reserved.
+ */
+
+package com.wacom.ink.path;
+
+/**
+ * The VelocityEstimator class estimates the speed of the pen over a sliding time window, instead of from the last two input samples.
+ * <br/>
+ * The timestamps of the touch input have a resolution of a millisecond and the Android Framework delivers the samples in batches,
+ * so the time between two successive samples is often close to 0 or a multiple of the real sampling period. A speed calculated from two samples is then very noisy,
+ * which results in spiky widths and opacities. The estimator divides the length of the path travelled within the window by the time span of the window,
+ * so the quantization error of a single timestamp is spread over the whole window.
+ * <br/>
+ * For best results the historical samples of the MotionEvents should be passed with their own event times, see {@link com.wacom.ink.utils.TouchUtils#getTimestamp(long)}.
+ * An estimator can be set to a {@link JavaSpeedPathBuilder} with {@link JavaSpeedPathBuilder#setVelocityEstimator(VelocityEstimator)}.
+ */
+public class VelocityEstimator {
+	/**
+	 * The default length of the time window in seconds.
+	 */
+	public final static double DEFAULT_WINDOW = 0.04;
+
+	/**
+	 * The default minimal time span in seconds, for which a velocity is calculated.
+	 */
+	public final static double DEFAULT_MIN_TIME_SPAN = 0.004;
+
+	private final static int MAX_SAMPLES = 64;
+
+	private double window = DEFAULT_WINDOW;
+	private double minTimeSpan = DEFAULT_MIN_TIME_SPAN;
+
+	private final float[] xs = new float[MAX_SAMPLES];
+	private final float[] ys = new float[MAX_SAMPLES];
+	private final double[] timestamps = new double[MAX_SAMPLES];
+	// The distance from the previous sample.
+	private final float[] distances = new float[MAX_SAMPLES];
+	private int first;
+	private int count;
+	// The sum is kept in double precision, so that adding and removing the float distances doesn't accumulate rounding errors.
+	private double windowDistance;
+	private float velocity;
+
+	/**
+	 * Sets the length of the time window.
+	 * @param window The length in seconds. Longer windows give smoother results, but react later to changes of the speed.
+	 */
+	public void setWindow(double window){
+		this.window = window;
+	}
+
+	/**
+	 * Sets the minimal time span of the samples, for which a velocity is calculated. Until the samples in the window span this time, the previous velocity is kept.
+	 * @param minTimeSpan The time span in seconds.
+	 */
+	public void setMinTimeSpan(double minTimeSpan){
+		this.minTimeSpan = minTimeSpan;
+	}
+
+	/**
+	 * Removes all samples. This method should be called at the beginning of each stroke.
+	 */
+	public void reset(){
+		first = 0;
+		count = 0;
+		windowDistance = 0;
+		velocity = 0;
+	}
+
+	/**
+	 * Adds the next input sample and updates the velocity estimation.
+	 * @param x The x coordinate of the sample.
+	 * @param y The y coordinate of the sample.
+	 * @param timestamp The timestamp of the sample in seconds. The timestamps should not decrease.
+	 * @return The estimated velocity, see {@link #getVelocity()}.
+	 */
+	public float addSample(float x, float y, double timestamp){
+		float distance = 0;
+		if (count>0){
+			int last = (first + count - 1)%MAX_SAMPLES;
+			float dx = x - xs[last];
+			float dy = y - ys[last];
+			distance = (float)Math.sqrt(dx*dx + dy*dy);
+		}
+		if (count==MAX_SAMPLES){
+			removeFirst();
+		}
+		int index = (first + count)%MAX_SAMPLES;
+		xs[index] = x;
+		ys[index] = y;
+		timestamps[index] = timestamp;
+		distances[index] = distance;
+		count++;
+		windowDistance += distance;
+
+		// Keep the last sample before the window, so that the samples span the whole window.
+		while (count>2 && timestamps[(first+1)%MAX_SAMPLES]<=timestamp - window){
+			removeFirst();
+		}
+
+		double timeSpan = timestamp - timestamps[first];
+		if (timeSpan>=minTimeSpan){
+			velocity = (float)(windowDistance/timeSpan);
+		}
+		return velocity;
+	}
+
+	private void removeFirst(){
+		first = (first+1)%MAX_SAMPLES;
+		count--;
+		// The distance of the new first sample is no longer within the window.
+		windowDistance -= distances[first];
+		distances[first] = 0;
+		if (count==1 || windowDistance<0){
+			windowDistance = 0;
+		}
+	}
+
+	/**
+	 * Returns the estimated velocity.
+	 * @return The velocity in units of the coordinates per second.
+	 */
+	public float getVelocity(){
+		return velocity;
+	}
+}
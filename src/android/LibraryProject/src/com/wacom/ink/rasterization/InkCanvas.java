@@ -16,6 +16,7 @@ import android.opengl.GLUtils;
 
 import com.wacom.ink.geometry.WQuad;
 import com.wacom.ink.geometry.WRect;
+import com.wacom.ink.path.SegmentedPath;
 import com.wacom.ink.utils.Mx;
 import com.wacom.ink.utils.Utils;
 
@@ -172,6 +173,34 @@ public class InkCanvas {
 	public void drawStroke(StrokePaint strokePaint, StrokeJoin strokeJoin, FloatBuffer controlPointsBuffer, int bufferPosition, int bufferSize, int stride, float ts, float tf){
 		nativeDrawStroke(handle, strokePaint.handle, strokeJoin.handle, controlPointsBuffer, bufferPosition, bufferSize, stride, ts, tf);		
 	}
+	
+	/**
+	 * Draws a stroke, stored in a {@link SegmentedPath}, into the currently set target layer. 
+	 * The chunks of the path are drawn one after another, joined with the provided StrokeJoin, so the path doesn't need to be copied into a single buffer.
+	 * The round caps of the strokePaint are applied only at the start of the first chunk and at the end of the last one.
+	 * <br/>This method should be called on the GL thread.
+	 * @param strokePaint A StrokePaint containing information how to draw the stroke.
+	 * @param strokeJoin A StrokeJoin storing relevant stroke composition information between successive drawStroke calls
+	 * @param path The segmented path containing the control points.
+	 * @param ts The starting value for the Catmull-Rom spline parameter (0 is the default value).
+	 * @param tf The ending value for the Catmull-Rom spline parameter (1 is the default value).
+	 */
+	public void drawStroke(StrokePaint strokePaint, StrokeJoin strokeJoin, SegmentedPath path, float ts, float tf){
+		int chunkCount = path.getChunkCount();
+		if (chunkCount==1){
+			drawStroke(strokePaint, strokeJoin, path.getChunk(0), 0, path.getChunkSize(0), path.getStride(), ts, tf);
+			return;
+		}
+		boolean bRoundCapBeginning = strokePaint.isRoundCapBeginning();
+		boolean bRoundCapEnding = strokePaint.isRoundCapEnding();
+		for (int c=0;c<chunkCount;c++){
+			boolean bFirst = c==0;
+			boolean bLast = c==chunkCount-1;
+			strokePaint.setRoundCaps(bFirst && bRoundCapBeginning, bLast && bRoundCapEnding);
+			drawStroke(strokePaint, strokeJoin, path.getChunk(c), 0, path.getChunkSize(c), path.getStride(), bFirst?ts:0.0f, bLast?tf:1.0f);
+		}
+		strokePaint.setRoundCaps(bRoundCapBeginning, bRoundCapEnding);
+	}
 
 	private native void nativeFillPath(long handle, FloatBuffer points, int size, int stride, float r, float g, float b, float a, boolean bAntialiazing);
 	
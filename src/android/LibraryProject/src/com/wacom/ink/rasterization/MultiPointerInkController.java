@@ -0,0 +1,379 @@
+/*
+ * Created by Zahari Pastarmadjiev.
+ * Copyright (c) 2014 Wacom. All rights reserved.
+ */
+
+package com.wacom.ink.rasterization;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+
+import android.view.MotionEvent;
+
+import com.wacom.ink.geometry.WRect;
+import com.wacom.ink.path.SpeedPathBuilder;
+import com.wacom.ink.smooth.MultiChannelSmoothener;
+import com.wacom.ink.smooth.MultiChannelSmoothener.SmoothingResult;
+import com.wacom.ink.utils.TouchUtils;
+import com.wacom.ink.utils.Utils;
+
+/**
+ * The MultiPointerInkController class allows several pointers to ink simultaneously, for example on a multi-touch whiteboard.
+ * Each pointer of a MotionEvent is routed to its own set of a {@link SpeedPathBuilder}, a {@link MultiChannelSmoothener} and a {@link StrokeJoin} (a {@link PointerStroke}),
+ * and all active strokes are drawn together with a single {@link #draw(InkCanvas, Layer, Layer)} call.
+ * <br/>
+ * The sets are kept in a pool and are reused for the next strokes, so no native objects are created per stroke.
+ * At most maxPointers strokes can be drawn at the same time. The pointers going down while all sets are in use are ignored.
+ * <br/>
+ * Typical usage:<br/>
+ * <pre>
+ * public boolean onTouch(View v, MotionEvent event) {
+ *     controller.onTouchEvent(event);
+ *     controller.draw(inkCanvas, strokesLayer, strokesWithPreliminaryLayer);
+ *     renderView();
+ *     return true;
+ * }
+ * </pre>
+ * The draw method should be called after each onTouchEvent call, because only the lastly added path parts are drawn.
+ */
+public class MultiPointerInkController {
+	/**
+	 * Callback interface for configuration of the pooled objects and for notification about the finished strokes.
+	 */
+	public static interface Callback {
+		/**
+		 * Called once for each set, when it is created. The path builder should be configured here, including its property configs, which define its stride.
+		 * @param pathBuilder The path builder of the set.
+		 */
+		void onConfigure(SpeedPathBuilder pathBuilder);
+
+		/**
+		 * Called once for each set, right after {@link #onConfigure(SpeedPathBuilder)}. The smoothener should be configured here.
+		 * @param smoothener The smoothener of the set, created with the stride of the configured path builder.
+		 */
+		void onConfigureSmoothener(MultiChannelSmoothener smoothener);
+
+		/**
+		 * Called when a stroke has been finished and drawn, before the set is returned to the pool.
+		 * The path of the stroke can be obtained from the path builder of the stroke and should be copied if needed.
+		 * @param stroke The finished stroke.
+		 */
+		void onStrokeFinished(PointerStroke stroke);
+	}
+
+	/**
+	 * A set of objects used for building and drawing the stroke of a single pointer.
+	 */
+	public static class PointerStroke {
+		private final SpeedPathBuilder pathBuilder;
+		private MultiChannelSmoothener smoothener;
+		private final StrokeJoin strokeJoin;
+		private final StrokeJoin prelimJoin;
+		private final WRect prevPrelimArea;
+
+		private int pointerId = -1;
+		private boolean bInUse;
+		private boolean bBegan;
+		private boolean bUpdated;
+
+		PointerStroke(float density){
+			pathBuilder = new SpeedPathBuilder(density);
+			strokeJoin = new StrokeJoin();
+			prelimJoin = new StrokeJoin();
+			prevPrelimArea = new WRect();
+		}
+
+		/**
+		 * Returns the id of the pointer drawing the stroke.
+		 * @return The pointer id, or -1 if the stroke has been finished.
+		 */
+		public int getPointerId(){
+			return pointerId;
+		}
+
+		/**
+		 * Returns the path builder used for the stroke.
+		 * @return The path builder.
+		 */
+		public SpeedPathBuilder getPathBuilder(){
+			return pathBuilder;
+		}
+
+		/**
+		 * Returns the smoothener used for the stroke.
+		 * @return The smoothener.
+		 */
+		public MultiChannelSmoothener getSmoothener(){
+			return smoothener;
+		}
+
+		/**
+		 * Returns the stroke join used for the drawing of the stroke.
+		 * @return The stroke join.
+		 */
+		public StrokeJoin getStrokeJoin(){
+			return strokeJoin;
+		}
+	}
+
+	private final float density;
+	private final int maxPointers;
+	private final Callback callback;
+	private final ArrayList<PointerStroke> strokes;
+
+	private StrokePaint paint;
+	private final StrokePaint prelimPaint;
+	private final WRect dirtyArea;
+	private FloatBuffer movePoints;
+
+	/**
+	 * Constructs a new instance.
+	 * @param density The density used for the creation of the path builders.
+	 * @param maxPointers The maximal number of strokes, which can be drawn at the same time.
+	 * @param paint The paint used for all strokes.
+	 * @param callback The callback for configuration of the path builders and smootheners. Could be null.
+	 */
+	public MultiPointerInkController(float density, int maxPointers, StrokePaint paint, Callback callback){
+		this.density = density;
+		this.maxPointers = maxPointers;
+		this.paint = paint;
+		this.callback = callback;
+		strokes = new ArrayList<PointerStroke>(maxPointers);
+		prelimPaint = new StrokePaint();
+		dirtyArea = new WRect();
+	}
+
+	/**
+	 * Sets the paint used for the strokes. The change takes effect with the next draw call.
+	 * @param paint The paint.
+	 */
+	public void setPaint(StrokePaint paint){
+		this.paint = paint;
+	}
+
+	/**
+	 * Returns the number of strokes, which are currently being built or are waiting to be drawn.
+	 * @return The number of active strokes.
+	 */
+	public int getActiveStrokesCount(){
+		int count = 0;
+		for (int i=0;i<strokes.size();i++){
+			if (strokes.get(i).bInUse){
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the stroke drawn by the pointer with the given id.
+	 * @param pointerId The pointer id.
+	 * @return The stroke or null if the pointer doesn't draw a stroke.
+	 */
+	public PointerStroke getPointerStroke(int pointerId){
+		for (int i=0;i<strokes.size();i++){
+			PointerStroke stroke = strokes.get(i);
+			if (stroke.bInUse && stroke.pointerId==pointerId){
+				return stroke;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Routes the pointers of the MotionEvent to their strokes.
+	 * @param event The MotionEvent.
+	 * @return True if at least one stroke has been updated, false otherwise.
+	 */
+	public boolean onTouchEvent(MotionEvent event){
+		boolean bUpdated = false;
+		int actionIndex = event.getActionIndex();
+		PointerStroke stroke;
+
+		switch (event.getActionMasked()){
+			case MotionEvent.ACTION_DOWN:
+			case MotionEvent.ACTION_POINTER_DOWN:
+				stroke = acquireStroke(event.getPointerId(actionIndex));
+				if (stroke!=null){
+					FloatBuffer part = stroke.pathBuilder.beginPath(event.getX(actionIndex), event.getY(actionIndex), TouchUtils.getTimestamp(event));
+					stroke.smoothener.reset();
+					stroke.bBegan = true;
+					addPathPart(stroke, part, false);
+					bUpdated = true;
+				}
+				break;
+			case MotionEvent.ACTION_MOVE:
+				for (int pointerIndex=0;pointerIndex<event.getPointerCount();pointerIndex++){
+					stroke = getPointerStroke(event.getPointerId(pointerIndex));
+					if (stroke!=null && !stroke.pathBuilder.hasFinished()){
+						FloatBuffer part = stroke.pathBuilder.addPoints(getMovePoints(event, pointerIndex, stroke.pathBuilder.getBeginTimestamp()), event.getHistorySize()+1);
+						addPathPart(stroke, part, false);
+						bUpdated = true;
+					}
+				}
+				break;
+			case MotionEvent.ACTION_UP:
+			case MotionEvent.ACTION_POINTER_UP:
+				stroke = getPointerStroke(event.getPointerId(actionIndex));
+				if (stroke!=null && !stroke.pathBuilder.hasFinished()){
+					endStroke(stroke, event.getX(actionIndex), event.getY(actionIndex), TouchUtils.getTimestamp(event));
+					bUpdated = true;
+				}
+				break;
+			case MotionEvent.ACTION_CANCEL:
+				for (int pointerIndex=0;pointerIndex<event.getPointerCount();pointerIndex++){
+					stroke = getPointerStroke(event.getPointerId(pointerIndex));
+					if (stroke!=null && !stroke.pathBuilder.hasFinished()){
+						endStroke(stroke, event.getX(pointerIndex), event.getY(pointerIndex), TouchUtils.getTimestamp(event));
+						bUpdated = true;
+					}
+				}
+				break;
+		}
+		return bUpdated;
+	}
+
+	private PointerStroke acquireStroke(int pointerId){
+		if (getPointerStroke(pointerId)!=null){
+			return null;
+		}
+		PointerStroke stroke = null;
+		for (int i=0;i<strokes.size();i++){
+			if (!strokes.get(i).bInUse){
+				stroke = strokes.get(i);
+				break;
+			}
+		}
+		if (stroke==null){
+			if (strokes.size()==maxPointers){
+				return null;
+			}
+			stroke = new PointerStroke(density);
+			if (callback!=null){
+				callback.onConfigure(stroke.pathBuilder);
+			}
+			// The channels of the smoothener are fixed, so it is created with the stride of the configured path builder.
+			stroke.smoothener = new MultiChannelSmoothener(stroke.pathBuilder.getStride());
+			if (callback!=null){
+				callback.onConfigureSmoothener(stroke.smoothener);
+			}
+			strokes.add(stroke);
+		}
+		stroke.pointerId = pointerId;
+		stroke.bInUse = true;
+		return stroke;
+	}
+
+	private void endStroke(PointerStroke stroke, float x, float y, double timestamp){
+		FloatBuffer part = stroke.pathBuilder.endPath(x, y, timestamp);
+		addPathPart(stroke, part, true);
+	}
+
+	private void addPathPart(PointerStroke stroke, FloatBuffer part, boolean bFinish){
+		SpeedPathBuilder pathBuilder = stroke.pathBuilder;
+		SmoothingResult smoothingResult;
+		if (part!=null){
+			smoothingResult = stroke.smoothener.smooth(part, pathBuilder.getPathPartSize(), bFinish);
+			pathBuilder.addPathPart(smoothingResult.getSmoothedPoints(), smoothingResult.getSize());
+		}
+		FloatBuffer preliminaryPath = pathBuilder.createPreliminaryPath();
+		smoothingResult = stroke.smoothener.smooth(preliminaryPath, pathBuilder.getPreliminaryPathSize(), true);
+		pathBuilder.finishPreliminaryPath(smoothingResult.getSmoothedPoints(), smoothingResult.getSize());
+		stroke.bUpdated = true;
+	}
+
+	private FloatBuffer getMovePoints(MotionEvent event, int pointerIndex, double beginTimestamp){
+		int historySize = event.getHistorySize();
+		movePoints = Utils.reallocNativeFloatBuffer(movePoints, (historySize+1)*3);
+		movePoints.position(0);
+		for (int h=0;h<historySize;h++){
+			movePoints.put(event.getHistoricalX(pointerIndex, h));
+			movePoints.put(event.getHistoricalY(pointerIndex, h));
+			movePoints.put((float)(TouchUtils.getTimestamp(event.getHistoricalEventTime(h)) - beginTimestamp));
+		}
+		movePoints.put(event.getX(pointerIndex));
+		movePoints.put(event.getY(pointerIndex));
+		movePoints.put((float)(TouchUtils.getTimestamp(event) - beginTimestamp));
+		movePoints.position(0);
+		return movePoints;
+	}
+
+	/**
+	 * Draws the updates of all active strokes.
+	 * The committed parts of the strokes are drawn into the strokesLayer. Then the area affected by the updates and by the previous preliminary paths
+	 * is copied from the strokesLayer into the strokesWithPreliminaryLayer, and the preliminary paths of all active strokes are drawn into it.
+	 * <br/>This method should be called on the GL thread.
+	 * @param inkCanvas The canvas.
+	 * @param strokesLayer The layer holding the committed strokes.
+	 * @param strokesWithPreliminaryLayer The layer holding the committed strokes and the preliminary paths, which should be presented.
+	 */
+	public void draw(InkCanvas inkCanvas, Layer strokesLayer, Layer strokesWithPreliminaryLayer){
+		dirtyArea.setNaN();
+		boolean bHasUpdates = false;
+
+		for (int i=0;i<strokes.size();i++){
+			PointerStroke stroke = strokes.get(i);
+			if (!stroke.bInUse){
+				continue;
+			}
+			// All preliminary paths are drawn again, so the areas of the previous ones should be restored.
+			dirtyArea.union(stroke.prevPrelimArea);
+			stroke.prevPrelimArea.setNaN();
+			if (!stroke.bUpdated){
+				continue;
+			}
+			if (stroke.bBegan){
+				stroke.strokeJoin.reset();
+				if (!bHasUpdates && getActiveStrokesCount()==1){
+					// The only stroke has just started, so the layers could be synchronized entirely.
+					inkCanvas.setTarget(strokesWithPreliminaryLayer);
+					inkCanvas.drawLayer(strokesLayer, null, BlendMode.BLENDMODE_NONE);
+				}
+				stroke.bBegan = false;
+			}
+			bHasUpdates = true;
+
+			SpeedPathBuilder pathBuilder = stroke.pathBuilder;
+			if (pathBuilder.getPathSize()>0 && pathBuilder.getAddedPointsSize()>0){
+				paint.setRoundCaps(pathBuilder.getPathSize()==pathBuilder.getAddedPointsSize(), pathBuilder.hasFinished());
+				inkCanvas.setTarget(strokesLayer);
+				inkCanvas.drawStroke(paint, stroke.strokeJoin, pathBuilder.getPathBuffer(), pathBuilder.getPathLastUpdatePosition(), pathBuilder.getAddedPointsSize(), pathBuilder.getStride(), 0.0f, 1.0f);
+				dirtyArea.union(stroke.strokeJoin.getDirtyArea());
+			}
+		}
+
+		if (!bHasUpdates){
+			return;
+		}
+
+		inkCanvas.setTarget(strokesWithPreliminaryLayer);
+		if (!dirtyArea.isNaN()){
+			inkCanvas.setClipRect(dirtyArea);
+			inkCanvas.drawLayer(strokesLayer, null, BlendMode.BLENDMODE_NONE);
+			inkCanvas.disableClipRect();
+		}
+
+		prelimPaint.copy(paint);
+		prelimPaint.setRoundCaps(false, true);
+		for (int i=0;i<strokes.size();i++){
+			PointerStroke stroke = strokes.get(i);
+			if (!stroke.bInUse){
+				continue;
+			}
+			SpeedPathBuilder pathBuilder = stroke.pathBuilder;
+			if (pathBuilder.hasFinished()){
+				// The stroke has been drawn entirely, return the set to the pool.
+				if (callback!=null){
+					callback.onStrokeFinished(stroke);
+				}
+				stroke.pointerId = -1;
+				stroke.bInUse = false;
+			} else if (pathBuilder.getFinishedPreliminaryPathSize()>0){
+				stroke.prelimJoin.copy(stroke.strokeJoin);
+				inkCanvas.drawStroke(prelimPaint, stroke.prelimJoin, pathBuilder.getPreliminaryPathBuffer(), 0, pathBuilder.getFinishedPreliminaryPathSize(), pathBuilder.getStride(), 0.0f, 1.0f);
+				stroke.prevPrelimArea.set(stroke.prelimJoin.getDirtyArea());
+			}
+			stroke.bUpdated = false;
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package com.wacom.ink.samples.benchmark;
+
+import java.nio.ByteBuffer;
+
+import android.util.Log;
+
+import com.wacom.ink.serialization.InkIndex;
+import com.wacom.ink.serialization.ParallelInkDecoder;
+
+/**
+ * Measures the scaling of the {@link ParallelInkDecoder} with the number of threads.
+ * <br/>
+ * Typical usage:<br/>
+ * <pre>
+ * ByteBuffer data = InkFileMapper.map(file);
+ * ParallelInkDecoderBenchmark.run(data, null, Runtime.getRuntime().availableProcessors(), 10);
+ * </pre>
+ */
+public class ParallelInkDecoderBenchmark {
+	private final static String TAG = "ParallelInkDecoderBenchmark";
+
+	private ParallelInkDecoderBenchmark(){
+	}
+
+	/**
+	 * Decodes the document with 1 to maxThreadsCount threads and logs the results.
+	 * @param dataBuffer A binary representation of a set of strokes. It should be a direct buffer.
+	 * @param index The index of the document, or null to decode it without an index.
+	 * @param maxThreadsCount The maximal number of threads, for example Runtime.getRuntime().availableProcessors().
+	 * @param repetitions The number of the measured decodings for each number of threads. One more decoding is made as a warm up.
+	 * @return The average decoding time in milliseconds for each number of threads, starting with 1 thread.
+	 * @throws InterruptedException If the current thread has been interrupted.
+	 */
+	public static double[] run(ByteBuffer dataBuffer, InkIndex index, int maxThreadsCount, int repetitions) throws InterruptedException {
+		double[] times = new double[maxThreadsCount];
+		for (int threads=1;threads<=maxThreadsCount;threads++){
+			ParallelInkDecoder decoder = new ParallelInkDecoder(threads);
+			try {
+				decode(decoder, dataBuffer, index);
+				long start = System.nanoTime();
+				for (int i=0;i<repetitions;i++){
+					decode(decoder, dataBuffer, index);
+				}
+				times[threads-1] = (System.nanoTime() - start)/1e6/Math.max(1, repetitions);
+				Log.i(TAG, threads + " threads, " + decoder.getPathsCount() + " paths: " + times[threads-1] + " ms, speedup " + (times[0]/times[threads-1]));
+			} finally {
+				decoder.shutdown();
+			}
+		}
+		return times;
+	}
+
+	private static void decode(ParallelInkDecoder decoder, ByteBuffer dataBuffer, InkIndex index) throws InterruptedException {
+		if (index==null){
+			decoder.decode(dataBuffer);
+		} else {
+			decoder.decode(dataBuffer, index);
+		}
+	}
+}
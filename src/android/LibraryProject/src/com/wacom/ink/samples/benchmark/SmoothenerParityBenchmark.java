@@ -0,0 +1,288 @@
+package com.wacom.ink.samples.benchmark;
+
+import java.nio.FloatBuffer;
+
+import android.util.Log;
+
+import com.wacom.ink.smooth.JavaMultiChannelSmoothener;
+import com.wacom.ink.smooth.MultiChannelSmoothener;
+import com.wacom.ink.smooth.MultiChannelSmoothener.SmoothingResult;
+import com.wacom.ink.utils.Utils;
+
+/**
+ * Verifies that the {@link JavaMultiChannelSmoothener} produces the same output as the native {@link MultiChannelSmoothener} and compares their speed.
+ * <br/>
+ * The {@link #verifyFixtures()} method doesn't need the native library: it smoothes a generated input with several configurations
+ * and compares the result with the output of the native library, recorded on x86 for the same input. The {@link #compare(int, int)} method
+ * smoothes the same input with both smootheners on the device, so it also covers the builds of the native library for the other architectures.
+ * <br/>
+ * Typical usage:<br/>
+ * <pre>
+ * boolean bIdentical = SmoothenerParityBenchmark.verifyFixtures() &amp;&amp; SmoothenerParityBenchmark.compare(2, 24);
+ * SmoothenerParityBenchmark.run(3, 1000, 100);
+ * </pre>
+ */
+public class SmoothenerParityBenchmark {
+	private final static String TAG = "SmoothenerParityBenchmark";
+
+	private final static int STROKES_COUNT = 2;
+	private final static int POINTS_COUNT = 24;
+	// The input of each stroke is passed in chunks with these numbers of points, the last chunk with bFinish set to true.
+	private final static int[] CHUNKS = {1, 3, 5, 2};
+
+	// The configuration of the channels: alpha, beta, finalBeta, windowSize, iterations, enabled. Null stands for the default configuration.
+	private final static float[][][] CONFIGURATIONS = {
+		{null, null, null},
+		{{0.5f, 0.3f, 0.01f, 3, 2, 1}, {0.5f, 0.3f, 0.01f, 3, 2, 0}, {1.0f, 0.0f, 0.0f, 1, 1, 1}},
+		{{0.2f, 0.6f, 0.05f, 8, 9, 1}, {0.9f, 0.1f, 0.5f, 2, 5, 1}},
+		{{0.6f, 0.2f, 0.01f, 0, 3, 1}, {0.6f, 0.2f, 0.01f, 4, 0, 1}},
+	};
+
+	// The output of the native library (x86 build) for each configuration, as raw float bits.
+	private final static int[][] NATIVE_OUTPUT = {
+		{
+			0x00000000, 0x40f80000, 0x3e800000, 0x3fcdf59a, 0x40f8eb62, 0x400d0bfa, 0x40a751c7, 0x40fbfd4b,
+			0x40df313a, 0x4119baaf, 0x411cf628, 0x4158beab, 0x414429f1, 0x41627e43, 0x41993deb, 0x41461341,
+			0x419dc0ec, 0x41b42a96, 0x41487a5b, 0x41bef44e, 0x41cee86a, 0x416b2c27, 0x41ccc5d9, 0x41f8c3f8,
+			0x4193095b, 0x41cc96bf, 0x42171371, 0x41a7c8d4, 0x41d75d37, 0x422d615d, 0x41a9fe97, 0x41f73c1d,
+			0x423a74c0, 0x419e1aaf, 0x421198fb, 0x42408289, 0x419cf033, 0x422256c1, 0x424bee4f, 0x41b0ca35,
+			0x42295ef0, 0x4261dbc2, 0x41d0bbb8, 0x42305150, 0x427dd48b, 0x41e63683, 0x423f1617, 0x428a48f2,
+			0x41e84714, 0x4253ca24, 0x4290cd14, 0x41ea2c03, 0x42642225, 0x4297464f, 0x41fbb594, 0x426b3a08,
+			0x42a1a8b5, 0x420c8ed5, 0x426b480e, 0x42af02bb, 0x4216e6d4, 0x4270b33e, 0x42ba2ebb, 0x4217feba,
+			0x42805036, 0x42c0baac, 0x42120cc0, 0x428b4c98, 0x42c3c1b0, 0x421177f2, 0x4293ab4a, 0x42c97748,
+			0x42d08000, 0x42e00000, 0x42d10000, 0x42d03672, 0x42e00eb6, 0x42d166fa, 0x42d2c23d, 0x42e03fd3,
+			0x42d64037, 0x42d92163, 0x42e09d60, 0x42e101e4, 0x42e1409b, 0x42e11b83, 0x42ef0ada, 0x42e650bd,
+			0x42e52769, 0x42fa98fb, 0x42e69955, 0x42ede27f, 0x4300a213, 0x42e38049, 0x42f8fb2a, 0x430225e1,
+			0x42e3345a, 0x43009fbb, 0x4304fddd, 0x42e8301b, 0x43025830, 0x430a774b, 0x42f02f23, 0x43041304,
+			0x431174ef, 0x42f58e08, 0x4307c4ee, 0x43172452, 0x42f611e4, 0x430cf282, 0x431a6681, 0x42f68afe,
+			0x43110897, 0x431da329, 0x42faed61, 0x4312ce87, 0x4322d45c, 0x430123b5, 0x4312d205, 0x4329815e,
+			0x4303b9b5, 0x43142cd0, 0x432f175d, 0x4303ffae, 0x4318281d, 0x43325d57, 0x4302832f, 0x431da64d,
+			0x4333e0da, 0x43025dfb, 0x4321d5a6, 0x4336bba6, 0x4304d947, 0x432397b7, 0x433c36f1, 0x4308d779,
+			0x432393a2, 0x43433521, 0x430b86d0, 0x4324ec19, 0x4348e477, 0x430bc8e3, 0x4328e792, 0x434c2689,
+		},
+		{
+			0x00000000, 0x40f80000, 0x3e800000, 0x40bd47af, 0x41000000, 0x418a0000, 0x41441e36, 0x41040000,
+			0x41980000, 0x4149c432, 0x41be0000, 0x41a60000, 0x4130b728, 0x41c00000, 0x41b40000, 0x411ce666,
+			0x41c20000, 0x41c20000, 0x416ffd71, 0x41c40000, 0x42250000, 0x41a9ddd2, 0x41c60000, 0x422c0000,
+			0x41ace408, 0x41c80000, 0x42330000, 0x41a05b96, 0x42220000, 0x423a0000, 0x41967334, 0x42230000,
+			0x42410000, 0x418c7334, 0x42240000, 0x42480000, 0x41b5feb8, 0x42250000, 0x42860000, 0x41e7ddd2,
+			0x42260000, 0x42898000, 0x41eae408, 0x42640000, 0x428d0000, 0x41de5b96, 0x42650000, 0x42908000,
+			0x41d47334, 0x42660000, 0x42940000, 0x41fdfeb8, 0x42670000, 0x42b60000, 0x4217eee9, 0x42680000,
+			0x42b98000, 0x42197205, 0x42690000, 0x42bd0000, 0x42132dcb, 0x42938000, 0x42c08000, 0x420e399a,
+			0x42940000, 0x42c40000, 0x4209399a, 0x42948000, 0x42c78000, 0x421dff5c, 0x42950000, 0x42e98000,
+			0x42d08000, 0x42e00000, 0x42d10000, 0x42cf719a, 0x42e08000, 0x42d48000, 0x42da0c01, 0x42e10000,
+			0x42f68000, 0x42e676f9, 0x42e18000, 0x42fa0000, 0x42e73903, 0x42e20000, 0x42fd8000, 0x42e416e4,
+			0x43008000, 0x43008000, 0x42e19ccc, 0x4300c000, 0x43024000, 0x42df1ccc, 0x43010000, 0x43040000,
+			0x42e97fae, 0x43014000, 0x43150000, 0x42f5f776, 0x43018000, 0x4316c000, 0x42f6b903, 0x43110000,
+			0x43188000, 0x42f396e4, 0x43114000, 0x431a4000, 0x42f11ccc, 0x43118000, 0x431c0000, 0x42fb7fae,
+			0x4311c000, 0x432d0000, 0x4303fbbb, 0x43120000, 0x432ec000, 0x43045c80, 0x43124000, 0x43308000,
+			0x4302cb72, 0x4321c000, 0x43324000, 0x43018e66, 0x43220000, 0x43340000, 0x43004e66, 0x43224000,
+			0x4335c000, 0x43057fd7, 0x43228000, 0x4346c000, 0x430bbbbb, 0x4322c000, 0x43488000, 0x430c1c80,
+			0x43230000, 0x434a4000, 0x430a8b72, 0x43328000, 0x434c0000, 0x43094e66, 0x4332c000, 0x434dc000,
+		},
+		{
+			0x00000000, 0x40f80000, 0x3a012092, 0x40ff9b9e, 0x3ba7f528, 0x4103cccf, 0x3ceb35c0, 0x41b7ebb8,
+			0x3deaa5e6, 0x41bfc7c8, 0x3eba6450, 0x41c1e616, 0x3f7a386a, 0x41c3e664, 0x40133438, 0x41c5e669,
+			0x409b58df, 0x41c7e66a, 0x41153d60, 0x421ef5de, 0x4183cc8c, 0x4222e3e4, 0x41d76b20, 0x4223f30a,
+			0x4223a041, 0x4224f334, 0x4267a102, 0x4225f332, 0x4298dd0b, 0x4260f5dd, 0x42bbd61f, 0x4264e3e4,
+			0x42d5fd0c, 0x4265f30c, 0x42e034ef, 0x4266f333, 0x42d4d8f0, 0x4267f332, 0x42b1b53d, 0x4268f331,
+			0x42732b36, 0x4291faef, 0x41d37a3f, 0x4293f1f2, 0xc0f7068e, 0x42947987, 0xc208add3, 0x4294f999,
+			0x42d08000, 0x42e00000, 0x42d07ffb, 0x42e079bc, 0x42d08006, 0x42e0f99a, 0x42d0814e, 0x42e17999,
+			0x42d08958, 0x42e1f999, 0x42d0a96f, 0x42ff7aef, 0x42d10b9e, 0x4300b8fb, 0x42d204fe, 0x4300fcc3,
+			0x42d42a57, 0x43013cce, 0x42d85e46, 0x43017cd0, 0x42dfc9cf, 0x43103d76, 0x42ebaf76, 0x431138f8,
+			0x42fd0fda, 0x43117cc5, 0x430a13c6, 0x4311bccf, 0x4317f230, 0x4311fccb, 0x4326bf58, 0x43123cce,
+			0x43343d7b, 0x4320fd77, 0x433da4ca, 0x4321f8f9, 0x434046fd, 0x43223cc4, 0x433a681e, 0x43227cce,
+			0x432c0d86, 0x4322bccc, 0x431772ce, 0x4322fccf, 0x4300ebfe, 0x4331bd78, 0x42dc04dd, 0x4332b8f8,
+		},
+		{
+			0x00000000, 0x40f80000, 0x41600000, 0x41000000, 0x414c0000, 0x41040000, 0x41380000, 0x41be0000,
+			0x41240000, 0x41c00000, 0x41100000, 0x41c20000, 0x41b80000, 0x41c40000, 0x41ae0000, 0x41c60000,
+			0x41a40000, 0x41c80000, 0x419a0000, 0x42220000, 0x41900000, 0x42230000, 0x41860000, 0x42240000,
+			0x41f60000, 0x42250000, 0x41ec0000, 0x42260000, 0x41e20000, 0x42640000, 0x41d80000, 0x42650000,
+			0x41ce0000, 0x42660000, 0x421f0000, 0x42670000, 0x421a0000, 0x42680000, 0x42150000, 0x42690000,
+			0x42100000, 0x42938000, 0x420b0000, 0x42940000, 0x42060000, 0x42948000, 0x423e0000, 0x42950000,
+			0x42d08000, 0x42e00000, 0x42ce0000, 0x42e08000, 0x42ea0000, 0x42e10000, 0x42e78000, 0x42e18000,
+			0x42e50000, 0x42e20000, 0x42e28000, 0x43008000, 0x42e00000, 0x4300c000, 0x42dd8000, 0x43010000,
+			0x42f98000, 0x43014000, 0x42f70000, 0x43018000, 0x42f48000, 0x43110000, 0x42f20000, 0x43114000,
+			0x42ef8000, 0x43118000, 0x4305c000, 0x4311c000, 0x43048000, 0x43120000, 0x43034000, 0x43124000,
+			0x43020000, 0x4321c000, 0x4300c000, 0x43220000, 0x42ff0000, 0x43224000, 0x430d8000, 0x43228000,
+			0x430c4000, 0x4322c000, 0x430b0000, 0x43230000, 0x4309c000, 0x43328000, 0x43088000, 0x4332c000,
+		}
+	};
+
+	private SmoothenerParityBenchmark(){
+	}
+
+	/**
+	 * Smoothes the generated input with the Java smoothener and compares the output with the recorded output of the native library.
+	 * @return True if the output is identical for all configurations.
+	 */
+	public static boolean verifyFixtures(){
+		boolean bIdentical = true;
+		for (int i=0;i<CONFIGURATIONS.length;i++){
+			float[][] configuration = CONFIGURATIONS[i];
+			JavaMultiChannelSmoothener smoothener = new JavaMultiChannelSmoothener(configuration.length);
+			for (int c=0;c<configuration.length;c++){
+				if (configuration[c]!=null){
+					float[] p = configuration[c];
+					smoothener.setChannelProperties(c, p[0], p[1], p[2], (int)p[3], (int)p[4]);
+					smoothener.setEnableChannel(c, p[5]!=0);
+				}
+			}
+			float[] output = smoothStrokes(new JavaSmoothener(smoothener), configuration.length, STROKES_COUNT, POINTS_COUNT);
+			int mismatch = findMismatch(output, NATIVE_OUTPUT[i]);
+			if (mismatch>=0){
+				Log.i(TAG, "Configuration " + i + " differs at value " + mismatch + ": " + output[mismatch] + " instead of " + Float.intBitsToFloat(NATIVE_OUTPUT[i][mismatch]));
+				bIdentical = false;
+			}
+		}
+		return bIdentical;
+	}
+
+	/**
+	 * Smoothes the same generated input with the native and the Java smootheners with the default configuration and compares the output.
+	 * @param strokesCount The number of the smoothed strokes.
+	 * @param pointsCount The number of the points per stroke.
+	 * @return True if the output is identical.
+	 */
+	public static boolean compare(int strokesCount, int pointsCount){
+		int channelCount = 3;
+		float[] nativeOutput = smoothStrokes(new NativeSmoothener(new MultiChannelSmoothener(channelCount)), channelCount, strokesCount, pointsCount);
+		float[] javaOutput = smoothStrokes(new JavaSmoothener(new JavaMultiChannelSmoothener(channelCount)), channelCount, strokesCount, pointsCount);
+		int[] expected = new int[nativeOutput.length];
+		for (int i=0;i<expected.length;i++){
+			expected[i] = Float.floatToRawIntBits(nativeOutput[i]);
+		}
+		int mismatch = findMismatch(javaOutput, expected);
+		if (mismatch>=0){
+			Log.i(TAG, "The output differs at value " + mismatch + ": " + javaOutput[mismatch] + " instead of " + nativeOutput[mismatch]);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Measures how long it takes the native and the Java smootheners with the default configuration to smooth a stroke, one point per call, and logs the results.
+	 * @param channelCount The number of the channels.
+	 * @param pointsCount The number of the points of the stroke.
+	 * @param repetitions The number of the measured strokes. One more stroke is smoothed as a warm up.
+	 * @return The average time in milliseconds per stroke of the native and of the Java smoothener.
+	 */
+	public static double[] run(int channelCount, int pointsCount, int repetitions){
+		double[] times = new double[2];
+		times[0] = measure(new NativeSmoothener(new MultiChannelSmoothener(channelCount)), channelCount, pointsCount, repetitions);
+		times[1] = measure(new JavaSmoothener(new JavaMultiChannelSmoothener(channelCount)), channelCount, pointsCount, repetitions);
+		Log.i(TAG, pointsCount + " points, " + channelCount + " channels: native " + times[0] + " ms, Java " + times[1] + " ms");
+		return times;
+	}
+
+	private static double measure(Smoothener smoothener, int channelCount, int pointsCount, int repetitions){
+		FloatBuffer buffer = Utils.createNativeFloatBuffer(channelCount);
+		long start = 0;
+		for (int r=0;r<=repetitions;r++){
+			if (r==1){
+				start = System.nanoTime();
+			}
+			smoothener.reset();
+			for (int i=0;i<pointsCount;i++){
+				for (int c=0;c<channelCount;c++){
+					buffer.put(c, value(r, i, c));
+				}
+				smoothener.smooth(buffer, channelCount, i==pointsCount-1, null, 0);
+			}
+		}
+		return (System.nanoTime() - start)/1e6/Math.max(1, repetitions);
+	}
+
+	private static float[] smoothStrokes(Smoothener smoothener, int channelCount, int strokesCount, int pointsCount){
+		float[] output = new float[strokesCount*pointsCount*channelCount];
+		FloatBuffer buffer = Utils.createNativeFloatBuffer(pointsCount*channelCount);
+		int outputSize = 0;
+		for (int s=0;s<strokesCount;s++){
+			smoothener.reset();
+			int chunk = 0;
+			for (int i=0;i<pointsCount;){
+				int count = Math.min(CHUNKS[chunk++%CHUNKS.length], pointsCount - i);
+				int size = 0;
+				for (int j=i;j<i+count;j++){
+					for (int c=0;c<channelCount;c++){
+						buffer.put(size++, value(s, j, c));
+					}
+				}
+				i += count;
+				outputSize += smoothener.smooth(buffer, size, i==pointsCount, output, outputSize);
+			}
+		}
+		return output;
+	}
+
+	// All generated values are multiples of 0.25, so they are computed exactly in single precision.
+	private static float value(int stroke, int point, int channel){
+		return stroke*100 + point*1.5f*(channel+1) + ((point*7919 + channel*31 + stroke*17)%61)/4.0f;
+	}
+
+	private static int findMismatch(float[] output, int[] expected){
+		for (int i=0;i<expected.length;i++){
+			if (Float.floatToRawIntBits(output[i])!=expected[i]){
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static interface Smoothener {
+		void reset();
+		int smooth(FloatBuffer buffer, int size, boolean bFinish, float[] output, int outputPosition);
+	}
+
+	private static class NativeSmoothener implements Smoothener {
+		private final MultiChannelSmoothener smoothener;
+
+		NativeSmoothener(MultiChannelSmoothener smoothener){
+			this.smoothener = smoothener;
+		}
+
+		@Override
+		public void reset(){
+			smoothener.reset();
+		}
+
+		@Override
+		public int smooth(FloatBuffer buffer, int size, boolean bFinish, float[] output, int outputPosition){
+			SmoothingResult result = smoothener.smooth(buffer, size, bFinish);
+			if (output!=null){
+				FloatBuffer points = result.getSmoothedPoints();
+				for (int i=0;i<result.getSize();i++){
+					output[outputPosition + i] = points.get(i);
+				}
+			}
+			return result.getSize();
+		}
+	}
+
+	private static class JavaSmoothener implements Smoothener {
+		private final JavaMultiChannelSmoothener smoothener;
+		private FloatBuffer result;
+
+		JavaSmoothener(JavaMultiChannelSmoothener smoothener){
+			this.smoothener = smoothener;
+		}
+
+		@Override
+		public void reset(){
+			smoothener.reset();
+		}
+
+		@Override
+		public int smooth(FloatBuffer buffer, int size, boolean bFinish, float[] output, int outputPosition){
+			result = Utils.reallocNativeFloatBuffer(result, size);
+			int resultSize = smoothener.smooth(buffer, size, bFinish, result);
+			if (output!=null){
+				for (int i=0;i<resultSize;i++){
+					output[outputPosition + i] = result.get(i);
+				}
+			}
+			return resultSize;
+		}
+	}
+}
@@ -27,6 +27,7 @@ import com.wacom.ink.rendering.RenderingContext;
 import com.wacom.ink.smooth.MultiChannelSmoothener;
 import com.wacom.ink.smooth.MultiChannelSmoothener.SmoothingResult;
 import com.wacom.ink.utils.TouchUtils;
+import com.wacom.ink.utils.Utils;
 
 public class DrawWithTouchPart05 extends Activity {
 	private RenderingContext renderingContext;
@@ -44,6 +45,7 @@ public class DrawWithTouchPart05 extends Activity {
 	private int pathStride;
 	private WRect prevPrelimArea = new WRect();
 	private WRect dirtyArea = new WRect();
+	private FloatBuffer movePoints;
 	
 	
 
@@ -186,7 +188,8 @@ public class DrawWithTouchPart05 extends Activity {
 				smoothener.reset();
 				break;
 			case MotionEvent.ACTION_MOVE:
-				part = pathBuilder.addPoint(x, y, timestamp);
+				// Add all the historical samples of the event with a single call.
+				part = pathBuilder.addPoints(getMovePoints(event), event.getHistorySize()+1);
 				break;
 			case MotionEvent.ACTION_UP:
 				bFinishSmoothing = true;
@@ -212,6 +215,22 @@ public class DrawWithTouchPart05 extends Activity {
 		pathBuilder.finishPreliminaryPath(smoothingResult.getSmoothedPoints(), smoothingResult.getSize());
 	}
 
+	private FloatBuffer getMovePoints(MotionEvent event){
+		int historySize = event.getHistorySize();
+		movePoints = Utils.reallocNativeFloatBuffer(movePoints, (historySize+1)*3);
+		movePoints.position(0);
+		for (int h=0;h<historySize;h++){
+			movePoints.put(event.getHistoricalX(h));
+			movePoints.put(event.getHistoricalY(h));
+			movePoints.put((float)(TouchUtils.getTimestamp(event.getHistoricalEventTime(h)) - pathBuilder.getBeginTimestamp()));
+		}
+		movePoints.put(event.getX());
+		movePoints.put(event.getY());
+		movePoints.put((float)(TouchUtils.getTimestamp(event) - pathBuilder.getBeginTimestamp()));
+		movePoints.position(0);
+		return movePoints;
+	}
+
 	private void drawStroke(MotionEvent event){
 		switch (event.getAction()){
 			case MotionEvent.ACTION_DOWN:
@@ -20,16 +20,25 @@ public class InkDecoder {
 	public long handle;
 	
 	private FloatBuffer decodedPathBuffer;
+	// The native decoder reads the data directly from the buffer, so it must not be garbage collected (or unmapped) before the decoder.
+	private ByteBuffer dataBuffer;
+	private int dataSize;
+	private InkIndex index;
+	// The index of the next stroke to be decoded and the end of the decoded range.
+	private int nextStrokeIndex;
+	private int rangeEnd = Integer.MAX_VALUE;
 	
 	private native long nativeInitialize(ByteBuffer dataBuffer, int dataBufferSize);
 	
 	/**
 	 * Creates new instance.
 	 * 
-	 * @param dataBuffer A binary representation of a set of strokes to be decoded.
+	 * @param dataBuffer A binary representation of a set of strokes to be decoded. It should be a direct buffer, for example a memory mapped file, see {@link InkFileMapper}.
 	 */
 	public InkDecoder(ByteBuffer dataBuffer){
-		handle = nativeInitialize(dataBuffer, dataBuffer.limit());
+		this.dataBuffer = dataBuffer;
+		dataSize = dataBuffer.limit();
+		handle = nativeInitialize(dataBuffer, dataSize);
 	}
 	
 	/**
@@ -39,7 +48,77 @@ public class InkDecoder {
 	 * @param dataBufferSizeInBytes Number of bytes to read from the dataBuffer, starting at position 0.
 	 */
 	public InkDecoder(ByteBuffer dataBuffer, int dataBufferSizeInBytes){
-		handle = nativeInitialize(dataBuffer, dataBufferSizeInBytes);
+		this.dataBuffer = dataBuffer;
+		dataSize = dataBufferSizeInBytes;
+		handle = nativeInitialize(dataBuffer, dataSize);
+	}
+	
+	/**
+	 * Sets the index of the strokes of the data, which enables the random access to the strokes with the {@link #seek(int)} and {@link #decodeRange(int, int)} methods.
+	 * @param index The index, built from the same data, see {@link InkIndex#build(ByteBuffer)}.
+	 * @throws IllegalArgumentException If the index has been built from data with different size.
+	 */
+	public void setIndex(InkIndex index){
+		if (index!=null && index.getDataSize()!=dataSize){
+			throw new IllegalArgumentException("The index doesn't match the data: " + index.getDataSize() + " != " + dataSize + " bytes");
+		}
+		this.index = index;
+	}
+	
+	/**
+	 * Returns the index of the strokes, see {@link #setIndex(InkIndex)}.
+	 * @return The index or null.
+	 */
+	public InkIndex getIndex(){
+		return index;
+	}
+	
+	/**
+	 * Moves the decoder to the given stroke, so that the next call of the {@link #decodeNextPath()} method decodes it. The strokes before it are not decoded.
+	 * The decoding continues to the end of the data. This method requires an index, see {@link #setIndex(InkIndex)}.
+	 * @param strokeIndex The index of the stroke.
+	 */
+	public void seek(int strokeIndex){
+		decodeRange(strokeIndex, getIndexOrThrow().getStrokesCount() - strokeIndex);
+	}
+	
+	/**
+	 * Restricts the decoder to a range of strokes, so that the next calls of the {@link #decodeNextPath()} method decode only these strokes.
+	 * Only the records of the range are read by the native decoder. This method requires an index, see {@link #setIndex(InkIndex)}.
+	 * @param firstStrokeIndex The index of the first stroke of the range.
+	 * @param strokesCount The number of strokes in the range.
+	 */
+	public void decodeRange(int firstStrokeIndex, int strokesCount){
+		InkIndex index = getIndexOrThrow();
+		if (firstStrokeIndex<0 || strokesCount<0 || firstStrokeIndex + strokesCount>index.getStrokesCount()){
+			throw new IndexOutOfBoundsException("Invalid range: " + firstStrokeIndex + ", " + strokesCount + " of " + index.getStrokesCount() + " strokes");
+		}
+		int start = index.getOffset(firstStrokeIndex);
+		int end = index.getOffset(firstStrokeIndex + strokesCount);
+		ByteBuffer range = dataBuffer.duplicate();
+		range.limit(end);
+		range.position(start);
+		if (handle!=0){
+			nativeFinalize(handle);
+		}
+		handle = nativeInitialize(range.slice(), end - start);
+		nextStrokeIndex = firstStrokeIndex;
+		rangeEnd = firstStrokeIndex + strokesCount;
+	}
+	
+	private InkIndex getIndexOrThrow(){
+		if (index==null){
+			throw new IllegalStateException("The decoder has no index, see setIndex()");
+		}
+		return index;
+	}
+	
+	/**
+	 * Returns the index of the stroke, which will be decoded by the next call of the {@link #decodeNextPath()} method.
+	 * @return The index of the stroke within the data.
+	 */
+	public int getNextStrokeIndex(){
+		return nextStrokeIndex;
 	}
 	
 	
@@ -51,22 +130,59 @@ public class InkDecoder {
 	 * @return True if a stroke has been decoded or false otherwise.  
 	 */
 	public boolean decodeNextPath(){
-		return nativeDecodePath(handle);
+		if (handle==0){
+			throw new IllegalStateException("The decoder has been released");
+		}
+		if (nextStrokeIndex>=rangeEnd || !nativeDecodePath(handle)){
+			return false;
+		}
+		nextStrokeIndex++;
+		return true;
 	}
 	
 	private native ByteBuffer nativeGetDecodedPathData(long handle);
 	
 	/**
 	 * This method returns the currently decoded path as a set of control points.
-	 * @return A float buffer with the control points of the path.
+	 * @return A float buffer with the control points of the path. It is important to note, that for performance reasons, the same buffer is reused, unless it is too small for the next path.
 	 */
 	public FloatBuffer getDecodedPathData(){
-		decodedPathBuffer = Utils.reallocNativeFloatBuffer(decodedPathBuffer, getDecodedPathSize());
-		FloatBuffer buf = nativeGetDecodedPathData(handle).order(ByteOrder.nativeOrder()).asFloatBuffer();
-		Utils.copyFloatBuffer(buf, decodedPathBuffer, 0, 0, getDecodedPathSize());
+		int size = getDecodedPathSize();
+		decodedPathBuffer = Utils.reallocNativeFloatBuffer(decodedPathBuffer, size);
+		getDecodedPathData(decodedPathBuffer, 0);
+		decodedPathBuffer.position(0);
 		return decodedPathBuffer;
 	}
 	
+	/**
+	 * This method returns a read-only view of the currently decoded path, without copying the control points.
+	 * The view is backed by the native storage of the decoder and is valid only until the next call of the {@link #decodeNextPath()} method.
+	 * @return A read-only float buffer with position 0 and limit equal to the size of the path.
+	 */
+	public FloatBuffer getDecodedPathView(){
+		FloatBuffer view = nativeGetDecodedPathData(handle).order(ByteOrder.nativeOrder()).asFloatBuffer().asReadOnlyBuffer();
+		view.limit(getDecodedPathSize());
+		return view;
+	}
+	
+	/**
+	 * This method copies the control points of the currently decoded path into the given buffer with a single bulk copy.
+	 * @param destination The buffer, where the control points will be copied. Its capacity should be at least position + {@link #getDecodedPathSize()}.
+	 * @param position The position in the destination buffer, where the first value will be copied.
+	 * @return The physical size in floats of the copied path.
+	 */
+	public int getDecodedPathData(FloatBuffer destination, int position){
+		int size = getDecodedPathSize();
+		FloatBuffer source = nativeGetDecodedPathData(handle).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		source.position(0);
+		source.limit(size);
+		FloatBuffer target = destination.duplicate();
+		target.limit(target.capacity());
+		target.position(position);
+		target.put(source);
+		return size;
+	}
+	
 	
 	private native int nativeGetDecodedPathSize(long handle);
 	
@@ -136,9 +252,21 @@ public class InkDecoder {
 	
 	private native void nativeFinalize(long handle);
 	
+	/**
+	 * Releases the native decoder immediately, instead of waiting for the garbage collector. 
+	 * The decoder should not be used after this method has been called, except for {@link #decodeRange(int, int)} and {@link #seek(int)}, which initialize it again.
+	 * Calling this method more than once has no effect.
+	 */
+	public void release(){
+		if (handle!=0){
+			nativeFinalize(handle);
+			handle = 0;
+		}
+	}
+	
 	@Override
 	protected void finalize() throws Throwable {
-		nativeFinalize(handle);
+		release();
 	}
 	
 	static { 
@@ -3,6 +3,7 @@ package com.wacom.ink.serialization;
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 
+import com.wacom.ink.path.SegmentedPath;
 import com.wacom.ink.utils.Logger;
 import com.wacom.ink.utils.Utils;
 
@@ -20,6 +21,7 @@ public class InkEncoder {
 	 */
 	public long handle;
 	private ByteBuffer encodedDataBuffer;
+	private FloatBuffer segmentedPathBuffer;
 	
 	private native long nativeInitialize();
 	
@@ -52,6 +54,27 @@ public class InkEncoder {
 		nativeEncodePath(handle, precision, pointsBuffer, size, stride, width, intColor, ts, tf);
 	}
 	
+	/**
+	 * This method encodes a single path, stored in a {@link SegmentedPath}. 
+	 * The encoder requires contiguous control points, so the chunks are copied into a buffer, which is reused by the subsequent calls.
+	 * 
+	 * @param precision 
+	 * @param path The segmented path containing the control points.
+	 * @param width The width of the path. If the control points include a width property value, this parameter should be NAN.
+	 * @param intColor The color in RGBA format.
+	 * @param ts The starting value for the Catmull-Rom spline parameter (0 is the default value).
+	 * @param tf The ending value for the Catmull-Rom spline parameter (1 is the default value).
+	 */
+	public void encodePath(int precision, SegmentedPath path, float width, int intColor, float ts, float tf){
+		if (path.getChunkCount()==1){
+			encodePath(precision, path.getChunk(0), path.getChunkSize(0), path.getStride(), width, intColor, ts, tf);
+			return;
+		}
+		segmentedPathBuffer = Utils.reallocNativeFloatBuffer(segmentedPathBuffer, path.getSize());
+		int size = path.copyTo(segmentedPathBuffer, 0);
+		encodePath(precision, segmentedPathBuffer, size, path.getStride(), width, intColor, ts, tf);
+	}
+	
 	
 	private native ByteBuffer nativeGetEncodedData(long handle);
 	
@@ -0,0 +1,109 @@
+/*
+ * Created by Zahari Pastarmadjiev.
+ * Copyright (c) 2014 Wacom. All rights reserved.
+ */
+
+package com.wacom.ink.serialization;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import com.wacom.ink.utils.Logger;
+import com.wacom.ink.utils.Utils;
+
+/**
+ * The InkFileMapper class maps files with encoded ink data into memory, so that they can be decoded by an {@link InkDecoder} without reading them first.
+ * <br/>
+ * A mapped buffer is a direct buffer, so it is passed to the decoder as it is. The pages of the file are loaded by the operating system on demand,
+ * while the decoder reads them, and they are shared through the page cache when the same file is opened again.
+ * The mapping remains valid after the file has been closed, until the buffer is garbage collected.
+ * <br/>
+ * Typical usage:<br/>
+ * <pre>
+ * InkDecoder decoder = new InkDecoder(InkFileMapper.map(context, uri));
+ * while (decoder.decodeNextPath()){
+ *     ...
+ * }
+ * </pre>
+ */
+public class InkFileMapper {
+	private final static Logger logger = new Logger(InkFileMapper.class, true);
+
+	private InkFileMapper(){
+	}
+
+	/**
+	 * Maps a file into memory.
+	 * @param file The file.
+	 * @return A read-only buffer with position 0 and limit equal to the size of the file.
+	 * @throws IOException If the file can't be opened or mapped.
+	 */
+	public static MappedByteBuffer map(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			return map(in.getChannel());
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Maps a file, identified by an Uri, into memory. Both file:// and content:// Uris are supported. The content Uris are opened through a ParcelFileDescriptor.
+	 * <br/>
+	 * Some content providers return a pipe instead of a file descriptor of a regular file, for example when the content is generated or downloaded on the fly.
+	 * A pipe can't be mapped, so its content is read into a native buffer with {@link Utils#loadBinaryFile(java.io.InputStream)} instead.
+	 * @param context The context, used to access the content resolver.
+	 * @param uri The Uri of the file.
+	 * @return A direct buffer with position 0 and limit equal to the size of the file. It is a read-only mapped buffer, unless the content has been read from a pipe.
+	 * @throws IOException If the file can't be opened, mapped or read.
+	 */
+	public static ByteBuffer map(Context context, Uri uri) throws IOException {
+		if (uri.getScheme()==null || ContentResolver.SCHEME_FILE.equals(uri.getScheme())){
+			return map(new File(uri.getPath()));
+		}
+		ParcelFileDescriptor descriptor = context.getContentResolver().openFileDescriptor(uri, "r");
+		if (descriptor==null){
+			throw new IOException("Can't open " + uri);
+		}
+		// The stream owns the descriptor and closes it.
+		FileInputStream in = new ParcelFileDescriptor.AutoCloseInputStream(descriptor);
+		if (descriptor.getStatSize()<0){
+			if (Logger.LOG_ENABLED) logger.i("map: " + uri + " is not a regular file, reading it");
+			// Closes the stream.
+			ByteBuffer buffer = Utils.loadBinaryFile(in);
+			if (buffer==null){
+				throw new IOException("Can't read " + uri);
+			}
+			return buffer;
+		}
+		try {
+			return map(in.getChannel());
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Maps the whole file of a channel into memory.
+	 * @param channel The file channel. It can be closed after this method returns.
+	 * @return A read-only buffer with position 0 and limit equal to the size of the file.
+	 * @throws IOException If the file can't be mapped.
+	 */
+	public static MappedByteBuffer map(FileChannel channel) throws IOException {
+		long size = channel.size();
+		if (size>Integer.MAX_VALUE){
+			throw new IOException("The file is too large to be mapped: " + size + " bytes");
+		}
+		if (Logger.LOG_ENABLED) logger.i("map: " + size + " bytes");
+		return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+	}
+}
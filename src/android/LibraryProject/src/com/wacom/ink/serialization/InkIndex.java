@@ -0,0 +1,321 @@
+/*
+ * Created by Zahari Pastarmadjiev.
+ * Copyright (c) 2014 Wacom. All rights reserved.
+ */
+
+package com.wacom.ink.serialization;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import android.graphics.RectF;
+
+import com.wacom.ink.geometry.CatmullRomSpline;
+import com.wacom.ink.utils.Logger;
+
+/**
+ * The InkIndex class is an index of the strokes of an encoded ink document. For each stroke it records the byte offset of its record, its bounding box, its number of control points and its stride.
+ * <br/>
+ * The index allows an {@link InkDecoder} to decode a single stroke or a range of strokes, without decoding the strokes before them,
+ * see {@link InkDecoder#seek(int)} and {@link InkDecoder#decodeRange(int, int)}. Together with {@link #findStrokes(RectF, int[])}, a viewer can decode only the strokes, which are visible.
+ * <br/>
+ * The index is built once by decoding the whole document, and it can be stored in a sidecar file next to the document, so that the document itself stays compatible with all readers.
+ * The index stores the size of the document and it is rejected by the decoder, if it doesn't match.
+ * <br/>
+ * Typical usage:<br/>
+ * <pre>
+ * InkIndex index = InkIndex.read(new FileInputStream(indexFile));
+ * InkDecoder decoder = new InkDecoder(InkFileMapper.map(file));
+ * decoder.setIndex(index);
+ * int count = index.findStrokes(visibleRect, indices);
+ * for (int i=0;i&lt;count;i++){
+ *     decoder.seek(indices[i]);
+ *     decoder.decodeNextPath();
+ *     ...
+ * }
+ * </pre>
+ */
+public class InkIndex {
+	private final static Logger logger = new Logger(InkIndex.class, true);
+
+	private final static int MAGIC = 0x57494C58;
+	private final static int VERSION = 2;
+
+	private final int dataSize;
+	private final int strokesCount;
+	// strokesCount + 1 entries, the last one is the end of the data.
+	private final int[] offsets;
+	private final int[] pointsCounts;
+	private final int[] strides;
+	// left, top, right, bottom for each stroke.
+	private final float[] bounds;
+	// A temporary storage used while the index is built.
+	private final float[] segmentBounds = new float[4];
+
+	private InkIndex(int dataSize, int strokesCount){
+		this.dataSize = dataSize;
+		this.strokesCount = strokesCount;
+		offsets = new int[strokesCount + 1];
+		pointsCounts = new int[strokesCount];
+		strides = new int[strokesCount];
+		bounds = new float[strokesCount*4];
+		offsets[strokesCount] = dataSize;
+	}
+
+	/**
+	 * Builds the index of an encoded ink document by decoding all of its strokes.
+	 * @param dataBuffer A binary representation of a set of strokes. It should be a direct buffer, see {@link InkDecoder#InkDecoder(ByteBuffer)}.
+	 * @return The index.
+	 */
+	public static InkIndex build(ByteBuffer dataBuffer){
+		return build(dataBuffer, dataBuffer.limit());
+	}
+
+	/**
+	 * Builds the index of an encoded ink document by decoding all of its strokes.
+	 * @param dataBuffer A binary representation of a set of strokes. It should be a direct buffer, see {@link InkDecoder#InkDecoder(ByteBuffer)}.
+	 * @param dataBufferSizeInBytes Number of bytes to read from the dataBuffer, starting at position 0.
+	 * @return The index.
+	 * @throws IllegalArgumentException If the data is not a sequence of complete path records.
+	 */
+	public static InkIndex build(ByteBuffer dataBuffer, int dataBufferSizeInBytes){
+		int count = 0;
+		int offset = 0;
+		while (offset<dataBufferSizeInBytes){
+			int size = InkRecords.getRecordSize(dataBuffer, offset, dataBufferSizeInBytes);
+			if (size<0 || offset + size>dataBufferSizeInBytes){
+				throw new IllegalArgumentException("Incomplete record at position " + offset);
+			}
+			offset += size;
+			count++;
+		}
+
+		InkIndex index = new InkIndex(dataBufferSizeInBytes, count);
+		offset = 0;
+		for (int i=0;i<count;i++){
+			index.offsets[i] = offset;
+			offset += InkRecords.getRecordSize(dataBuffer, offset, dataBufferSizeInBytes);
+		}
+
+		InkDecoder decoder = new InkDecoder(dataBuffer, dataBufferSizeInBytes);
+		int strokeIndex = 0;
+		while (decoder.decodeNextPath()){
+			if (strokeIndex==count){
+				throw new IllegalArgumentException("The decoded strokes don't match the records of the data");
+			}
+			index.setStroke(strokeIndex, decoder);
+			strokeIndex++;
+		}
+		decoder.release();
+		if (strokeIndex!=count){
+			throw new IllegalArgumentException("The decoded strokes don't match the records of the data");
+		}
+		if (Logger.LOG_ENABLED) logger.i("build: " + count + " strokes, " + dataBufferSizeInBytes + " bytes");
+		return index;
+	}
+
+	private void setStroke(int strokeIndex, InkDecoder decoder){
+		FloatBuffer points = decoder.getDecodedPathView();
+		int size = decoder.getDecodedPathSize();
+		int stride = decoder.getDecodedPathStride();
+		float width = decoder.getDecodedPathWidth();
+		int widthChannel = -1;
+		if (Float.isNaN(width)){
+			width = 0;
+			if (stride>2){
+				widthChannel = 2;
+			}
+		}
+		pointsCounts[strokeIndex] = stride>0?size/stride:0;
+		strides[strokeIndex] = stride;
+
+		int b = strokeIndex*4;
+		if (size<stride || stride<2){
+			bounds[b] = bounds[b+1] = bounds[b+2] = bounds[b+3] = Float.NaN;
+			return;
+		}
+		float left = Float.MAX_VALUE;
+		float top = Float.MAX_VALUE;
+		float right = -Float.MAX_VALUE;
+		float bottom = -Float.MAX_VALUE;
+		int segmentsCount = CatmullRomSpline.getSegmentsCount(size, stride);
+		if (segmentsCount>0){
+			// The curve overshoots its control points, so the bounds are calculated from the segments.
+			for (int s=0;s<segmentsCount;s++){
+				CatmullRomSpline.getSegmentBounds(points, 0, stride, widthChannel, width, s, segmentBounds);
+				left = Math.min(left, segmentBounds[0]);
+				top = Math.min(top, segmentBounds[1]);
+				right = Math.max(right, segmentBounds[2]);
+				bottom = Math.max(bottom, segmentBounds[3]);
+			}
+		} else {
+			// Too few control points for a segment, use the control points themselves.
+			float maxWidth = width;
+			for (int i=0;i+1<size;i+=stride){
+				float x = points.get(i);
+				float y = points.get(i+1);
+				left = Math.min(left, x);
+				top = Math.min(top, y);
+				right = Math.max(right, x);
+				bottom = Math.max(bottom, y);
+				if (widthChannel>=0){
+					maxWidth = Math.max(maxWidth, points.get(i + widthChannel));
+				}
+			}
+			float halfWidth = maxWidth/2;
+			left -= halfWidth;
+			top -= halfWidth;
+			right += halfWidth;
+			bottom += halfWidth;
+		}
+		bounds[b] = left;
+		bounds[b+1] = top;
+		bounds[b+2] = right;
+		bounds[b+3] = bottom;
+	}
+
+	/**
+	 * Reads an index, written by {@link #write(OutputStream)}.
+	 * @param in The stream. It is not closed by this method.
+	 * @return The index.
+	 * @throws IOException If reading fails or the stream doesn't contain an index.
+	 */
+	public static InkIndex read(InputStream in) throws IOException {
+		DataInputStream dataIn = new DataInputStream(in);
+		if (dataIn.readInt()!=MAGIC){
+			throw new IOException("Not an ink index");
+		}
+		int version = dataIn.readInt();
+		if (version!=VERSION){
+			throw new IOException("Unsupported ink index version: " + version);
+		}
+		int dataSize = dataIn.readInt();
+		int count = dataIn.readInt();
+		// Each record takes at least one byte, so a corrupted count can't make the index allocate more than the size of the document.
+		if (dataSize<0 || count<0 || count>dataSize){
+			throw new IOException("Corrupted ink index");
+		}
+		InkIndex index = new InkIndex(dataSize, count);
+		int previousOffset = 0;
+		for (int i=0;i<count;i++){
+			int offset = dataIn.readInt();
+			if (offset<previousOffset || offset>=dataSize){
+				throw new IOException("Corrupted ink index");
+			}
+			index.offsets[i] = offset;
+			previousOffset = offset;
+			index.pointsCounts[i] = dataIn.readInt();
+			index.strides[i] = dataIn.readInt();
+			if (index.pointsCounts[i]<0 || index.strides[i]<0){
+				throw new IOException("Corrupted ink index");
+			}
+			for (int j=0;j<4;j++){
+				index.bounds[i*4 + j] = dataIn.readFloat();
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Writes the index into a stream, for example a sidecar file of the document.
+	 * @param out The stream. It is flushed, but not closed by this method.
+	 * @throws IOException If writing fails.
+	 */
+	public void write(OutputStream out) throws IOException {
+		DataOutputStream dataOut = new DataOutputStream(out);
+		dataOut.writeInt(MAGIC);
+		dataOut.writeInt(VERSION);
+		dataOut.writeInt(dataSize);
+		dataOut.writeInt(strokesCount);
+		for (int i=0;i<strokesCount;i++){
+			dataOut.writeInt(offsets[i]);
+			dataOut.writeInt(pointsCounts[i]);
+			dataOut.writeInt(strides[i]);
+			for (int j=0;j<4;j++){
+				dataOut.writeFloat(bounds[i*4 + j]);
+			}
+		}
+		dataOut.flush();
+	}
+
+	/**
+	 * Finds the strokes, whose bounding boxes intersect the given rectangle.
+	 * @param rect The rectangle, for example the visible area of the document.
+	 * @param indices The array, where the indices of the strokes will be stored in ascending order. Its length should be at least {@link #getStrokesCount()}.
+	 * @return The number of the strokes found.
+	 */
+	public int findStrokes(RectF rect, int[] indices){
+		int count = 0;
+		for (int i=0;i<strokesCount;i++){
+			int b = i*4;
+			// The comparisons are false for the NaN bounds of empty strokes.
+			if (bounds[b]<=rect.right && bounds[b+2]>=rect.left && bounds[b+1]<=rect.bottom && bounds[b+3]>=rect.top){
+				indices[count++] = i;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the number of the strokes in the document.
+	 */
+	public int getStrokesCount(){
+		return strokesCount;
+	}
+
+	/**
+	 * Returns the size of the indexed document.
+	 * @return The size in bytes.
+	 */
+	public int getDataSize(){
+		return dataSize;
+	}
+
+	/**
+	 * Returns the byte offset of the record of a stroke.
+	 * @param strokeIndex The index of the stroke. The value {@link #getStrokesCount()} is accepted as well, and returns the size of the document.
+	 * @return The offset in bytes from the beginning of the document.
+	 */
+	public int getOffset(int strokeIndex){
+		return offsets[strokeIndex];
+	}
+
+	/**
+	 * Returns the number of the control points of a stroke.
+	 * @param strokeIndex The index of the stroke.
+	 * @return The number of the control points.
+	 */
+	public int getPointsCount(int strokeIndex){
+		return pointsCounts[strokeIndex];
+	}
+
+	/**
+	 * Returns the stride of the control points of a stroke. Together with {@link #getPointsCount(int)} it gives the size of the decoded stroke, without decoding it.
+	 * @param strokeIndex The index of the stroke.
+	 * @return The offset from one control point to the next.
+	 */
+	public int getStride(int strokeIndex){
+		return strides[strokeIndex];
+	}
+
+	/**
+	 * Returns the bounding box of a stroke. It is the bounding box of the Catmull-Rom curve, see {@link CatmullRomSpline#getSegmentBounds(FloatBuffer, int, int, int, float, int, float[])},
+	 * expanded by the half of the maximal width of the stroke.
+	 * @param strokeIndex The index of the stroke.
+	 * @param result The rectangle, where the bounding box will be stored. It is invalidated (NaN values), if the stroke has no control points.
+	 * @return The result rectangle.
+	 */
+	public RectF getBounds(int strokeIndex, RectF result){
+		int b = strokeIndex*4;
+		result.left = bounds[b];
+		result.top = bounds[b+1];
+		result.right = bounds[b+2];
+		result.bottom = bounds[b+3];
+		return result;
+	}
+}
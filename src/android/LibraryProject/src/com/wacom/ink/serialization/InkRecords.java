@@ -0,0 +1,67 @@
+/*
+ * Created by Zahari Pastarmadjiev.
+ * Copyright (c) 2014 Wacom. All rights reserved.
+ */
+
+package com.wacom.ink.serialization;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Helper methods for the layout of the encoded ink data: a sequence of path records, each one prefixed with its length in bytes encoded as a Protocol Buffer varint.
+ */
+final class InkRecords {
+	/**
+	 * The maximal number of bytes of a varint32 length prefix.
+	 */
+	final static int MAX_HEADER_SIZE = 5;
+
+	private InkRecords(){
+	}
+
+	/**
+	 * Returns the total size in bytes (length prefix and payload) of the record starting at the given position.
+	 * @param buffer The encoded data.
+	 * @param position The position of the record.
+	 * @param limit The position after the last available byte.
+	 * @return The size of the record, or -1 if the length prefix is not complete within the limit. The payload itself may extend beyond the limit.
+	 */
+	static int getRecordSize(ByteBuffer buffer, int position, int limit){
+		int length = 0;
+		int shift = 0;
+		for (int i=0;i<MAX_HEADER_SIZE;i++){
+			if (position + i>=limit){
+				return -1;
+			}
+			int b = buffer.get(position + i) & 0xFF;
+			length |= (b & 0x7F) << shift;
+			if ((b & 0x80)==0){
+				if (length<0){
+					throw new IllegalArgumentException("Invalid record length at position " + position);
+				}
+				return i + 1 + length;
+			}
+			shift += 7;
+		}
+		throw new IllegalArgumentException("Invalid record length at position " + position);
+	}
+
+	/**
+	 * Returns the number of bytes from the given position, which are occupied by complete records.
+	 * @param buffer The encoded data.
+	 * @param position The position of the first record.
+	 * @param limit The position after the last available byte.
+	 * @return The size in bytes of the complete records.
+	 */
+	static int getCompleteRecordsSize(ByteBuffer buffer, int position, int limit){
+		int end = position;
+		while (end<limit){
+			int size = getRecordSize(buffer, end, limit);
+			if (size<0 || end + size>limit){
+				break;
+			}
+			end += size;
+		}
+		return end - position;
+	}
+}
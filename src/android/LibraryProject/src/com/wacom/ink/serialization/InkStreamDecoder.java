@@ -0,0 +1,262 @@
+/*
+ * Created by Zahari Pastarmadjiev.
+ * Copyright (c) 2014 Wacom. All rights reserved.
+ */
+
+package com.wacom.ink.serialization;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+import com.wacom.ink.utils.Logger;
+import com.wacom.ink.utils.Utils;
+
+/**
+ * Implements iterator-based interface for decoding compressed ink data read from a stream, without loading the whole data into memory.
+ * <br/>
+ * The encoded data is a sequence of length-delimited path records. The decoder reads the data in chunks into a native window buffer,
+ * and decodes the complete records in the window with an {@link InkDecoder}. The incomplete record at the end of the window is moved to its beginning
+ * and completed with the next chunk. The memory used is bounded by the window size (it grows only if a single record doesn't fit into it),
+ * so documents of any size can be decoded, and the first strokes are available as soon as the first chunk has been read.
+ * <br/>
+ * Typical usage:<br/>
+ * <pre>
+ * InkStreamDecoder decoder = new InkStreamDecoder(new FileInputStream(file));
+ * try {
+ *     while (decoder.decodeNextPath()){
+ *         FloatBuffer points = decoder.getDecodedPathData();
+ *         ...
+ *     }
+ * } finally {
+ *     decoder.close();
+ * }
+ * </pre>
+ */
+public class InkStreamDecoder {
+	private final static Logger logger = new Logger(InkStreamDecoder.class, true);
+
+	/**
+	 * The default size of the window buffer in bytes.
+	 */
+	public final static int DEFAULT_WINDOW_SIZE = 256*1024;
+
+	private final ReadableByteChannel channel;
+	private ByteBuffer window;
+	private int windowDataSize;
+	private int windowRecordsSize;
+	private boolean bEndOfStream;
+	private InkDecoder decoder;
+
+	private long bytesRead;
+	private int decodedPathsCount;
+
+	/**
+	 * Creates new instance.
+	 * @param channel The channel to read the encoded data from. The data is read from its current position.
+	 * @param windowSize The size of the window buffer in bytes.
+	 */
+	public InkStreamDecoder(ReadableByteChannel channel, int windowSize){
+		if (windowSize<InkRecords.MAX_HEADER_SIZE){
+			throw new IllegalArgumentException("windowSize is too small");
+		}
+		this.channel = channel;
+		window = Utils.createNativeByteBuffer(windowSize);
+	}
+
+	/**
+	 * Creates new instance with the default window size.
+	 * @param channel The channel to read the encoded data from. The data is read from its current position.
+	 */
+	public InkStreamDecoder(ReadableByteChannel channel){
+		this(channel, DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Creates new instance with the default window size.
+	 * @param in The stream to read the encoded data from. For file streams, the data is read directly through the file channel.
+	 */
+	public InkStreamDecoder(InputStream in){
+		this(in instanceof FileInputStream?((FileInputStream)in).getChannel():Channels.newChannel(in), DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * This method provides an iteration based approach to decode a set of encoded strokes. See {@link InkDecoder#decodeNextPath()}.
+	 * When the strokes in the window have been decoded, the next chunk of data is read from the stream.
+	 * @return True if a stroke has been decoded or false if the end of the stream has been reached.
+	 * @throws IOException If reading from the stream fails or the stream ends in the middle of a record.
+	 */
+	public boolean decodeNextPath() throws IOException {
+		while (true){
+			if (decoder!=null && decoder.decodeNextPath()){
+				decodedPathsCount++;
+				return true;
+			}
+			releaseDecoder();
+			if (!readNextChunk()){
+				return false;
+			}
+		}
+	}
+
+	private boolean readNextChunk() throws IOException {
+		// Move the incomplete record to the beginning of the window.
+		int remainingSize = windowDataSize - windowRecordsSize;
+		if (remainingSize>0 && windowRecordsSize>0){
+			window.limit(windowDataSize);
+			window.position(windowRecordsSize);
+			window.compact();
+		}
+		windowDataSize = remainingSize;
+		windowRecordsSize = 0;
+
+		while (true){
+			window.limit(window.capacity());
+			window.position(windowDataSize);
+			while (!bEndOfStream && window.hasRemaining()){
+				int count = channel.read(window);
+				if (count<0){
+					bEndOfStream = true;
+				} else {
+					windowDataSize += count;
+					bytesRead += count;
+				}
+			}
+			windowRecordsSize = InkRecords.getCompleteRecordsSize(window, 0, windowDataSize);
+			if (windowRecordsSize>0){
+				break;
+			}
+			if (bEndOfStream){
+				if (windowDataSize>0){
+					throw new IOException("Unexpected end of the ink data: " + windowDataSize + " bytes of an incomplete record");
+				}
+				return false;
+			}
+			// A single record doesn't fit into the window.
+			int recordSize = InkRecords.getRecordSize(window, 0, windowDataSize);
+			growWindow(Math.max(recordSize, window.capacity()*2));
+		}
+		window.position(0);
+		window.limit(windowRecordsSize);
+		decoder = new InkDecoder(window, windowRecordsSize);
+		return true;
+	}
+
+	private void releaseDecoder(){
+		// The native decoder of a window is released before the window is reused, the finalizers can't keep up with the allocations.
+		if (decoder!=null){
+			decoder.release();
+			decoder = null;
+		}
+	}
+
+	private void growWindow(int capacity){
+		if (Logger.LOG_ENABLED) logger.i("growWindow: " + window.capacity() + " -> " + capacity);
+		ByteBuffer newWindow = Utils.createNativeByteBuffer(capacity);
+		window.position(0);
+		window.limit(windowDataSize);
+		newWindow.put(window);
+		window = newWindow;
+	}
+
+	/**
+	 * Returns the currently decoded path as a set of control points. See {@link InkDecoder#getDecodedPathData()}.
+	 * @return A float buffer with the control points of the path.
+	 */
+	public FloatBuffer getDecodedPathData(){
+		return decoder.getDecodedPathData();
+	}
+
+	/**
+	 * Returns a read-only view of the currently decoded path, valid until the next call of {@link #decodeNextPath()}. See {@link InkDecoder#getDecodedPathView()}.
+	 * @return A read-only float buffer with the control points of the path.
+	 */
+	public FloatBuffer getDecodedPathView(){
+		return decoder.getDecodedPathView();
+	}
+
+	/**
+	 * Copies the control points of the currently decoded path into the given buffer. See {@link InkDecoder#getDecodedPathData(FloatBuffer, int)}.
+	 * @param destination The buffer, where the control points will be copied.
+	 * @param position The position in the destination buffer, where the first value will be copied.
+	 * @return The physical size in floats of the copied path.
+	 */
+	public int getDecodedPathData(FloatBuffer destination, int position){
+		return decoder.getDecodedPathData(destination, position);
+	}
+
+	/**
+	 * Returns the size of the currently decoded path.
+	 * @return The physical size in floats of the path.
+	 */
+	public int getDecodedPathSize(){
+		return decoder.getDecodedPathSize();
+	}
+
+	/**
+	 * Returns the stride of the currently decoded path.
+	 * @return The stide of the path, which is the offset from one control point to the next.
+	 */
+	public int getDecodedPathStride(){
+		return decoder.getDecodedPathStride();
+	}
+
+	/**
+	 * Returns the color of the currently decoded path.
+	 * @return The int color in RGBA format.
+	 */
+	public int getDecodedPathIntColor(){
+		return decoder.getDecodedPathIntColor();
+	}
+
+	/**
+	 * Returns the width of the currently decoded path.
+	 * @return The width of the path. If this parameter is NAN, the control points include a width property value.
+	 */
+	public float getDecodedPathWidth(){
+		return decoder.getDecodedPathWidth();
+	}
+
+	/**
+	 * Returns the starting value for the Catmull-Rom spline of the currently decoded path.
+	 * @return The starting value for the Catmull-Rom spline parameter (0 is the default value).
+	 */
+	public float getDecodedPathTs(){
+		return decoder.getDecodedPathTs();
+	}
+
+	/**
+	 * Returns the ending value for the Catmull-Rom spline of the currently decoded path.
+	 * @return The ending value for the Catmull-Rom spline parameter (1 is the default value).
+	 */
+	public float getDecodedPathTf(){
+		return decoder.getDecodedPathTf();
+	}
+
+	/**
+	 * Returns the number of the paths decoded so far.
+	 */
+	public int getDecodedPathsCount(){
+		return decodedPathsCount;
+	}
+
+	/**
+	 * Returns the number of the bytes read from the stream so far.
+	 */
+	public long getBytesRead(){
+		return bytesRead;
+	}
+
+	/**
+	 * Releases the native decoder and closes the underlying channel.
+	 * @throws IOException If closing the channel fails.
+	 */
+	public void close() throws IOException {
+		releaseDecoder();
+		channel.close();
+	}
+}
@@ -0,0 +1,504 @@
+/*
+ * Created by Zahari Pastarmadjiev.
+ * Copyright (c) 2014 Wacom. All rights reserved.
+ */
+
+package com.wacom.ink.serialization;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.wacom.ink.utils.Logger;
+import com.wacom.ink.utils.Utils;
+
+/**
+ * The ParallelInkDecoder class decodes a whole encoded ink document on several threads.
+ * <br/>
+ * The document is split into chunks at the boundaries of the path records, and each chunk is decoded by an independent {@link InkDecoder} on a worker pool.
+ * When all chunks have been decoded, the control points of all paths are copied in their original order into a single arena buffer,
+ * which is allocated with the exact size of the decoded data. The paths are accessed by their index in the document.
+ * <br/>
+ * If an {@link InkIndex} of the document is available, see {@link #decode(ByteBuffer, InkIndex)}, the size of every path is known before decoding.
+ * The arena is then allocated up front and the chunks are decoded directly into it, so the decoded data is neither buffered per chunk nor copied.
+ * The chunks are split at the stroke offsets of the index, without reading the records.
+ * <br/>
+ * The buffers of the decoder are reused by the subsequent calls of the {@link #decode(ByteBuffer)} method.
+ * <br/>
+ * Typical usage:<br/>
+ * <pre>
+ * ParallelInkDecoder decoder = new ParallelInkDecoder(Runtime.getRuntime().availableProcessors());
+ * decoder.decode(InkFileMapper.map(file));
+ * FloatBuffer arena = decoder.getPathsData();
+ * for (int i=0;i&lt;decoder.getPathsCount();i++){
+ *     int offset = decoder.getPathOffset(i);
+ *     int size = decoder.getPathSize(i);
+ *     ...
+ * }
+ * decoder.shutdown();
+ * </pre>
+ */
+public class ParallelInkDecoder {
+	private final static Logger logger = new Logger(ParallelInkDecoder.class, true);
+
+	/**
+	 * The number of chunks per thread. More chunks than threads balance the load, when the paths are not evenly distributed in the document.
+	 */
+	private final static int CHUNKS_PER_THREAD = 4;
+
+	/**
+	 * The minimal size of a chunk in bytes. Smaller documents are decoded with less chunks.
+	 */
+	private final static int MIN_CHUNK_SIZE = 16*1024;
+
+	private final ExecutorService executor;
+	private final boolean bOwnsExecutor;
+	private final int threadsCount;
+	private final List<Chunk> chunks = new ArrayList<Chunk>();
+	private int chunksCount;
+	private final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+
+	private FloatBuffer pathsData;
+	private int pathsDataSize;
+	private int pathsCount;
+	private int[] pathOffsets = new int[0];
+	private int[] pathSizes = new int[0];
+	private int[] pathStrides = new int[0];
+	private int[] pathIntColors = new int[0];
+	private float[] pathWidths = new float[0];
+	private float[] pathTs = new float[0];
+	private float[] pathTf = new float[0];
+
+	/**
+	 * Creates new instance with its own worker pool.
+	 * @param threadsCount The number of the worker threads.
+	 */
+	public ParallelInkDecoder(int threadsCount){
+		this(Executors.newFixedThreadPool(threadsCount), threadsCount, true);
+	}
+
+	/**
+	 * Creates new instance, which uses an existing worker pool.
+	 * @param executor The worker pool.
+	 * @param threadsCount The number of the threads of the pool, used for splitting the document.
+	 */
+	public ParallelInkDecoder(ExecutorService executor, int threadsCount){
+		this(executor, threadsCount, false);
+	}
+
+	private ParallelInkDecoder(ExecutorService executor, int threadsCount, boolean bOwnsExecutor){
+		if (threadsCount<1){
+			throw new IllegalArgumentException("threadsCount should be at least 1");
+		}
+		this.executor = executor;
+		this.threadsCount = threadsCount;
+		this.bOwnsExecutor = bOwnsExecutor;
+	}
+
+	/**
+	 * Decodes all paths of an encoded ink document.
+	 * @param dataBuffer A binary representation of a set of strokes. It should be a direct buffer, for example a memory mapped file, see {@link InkFileMapper}.
+	 * @throws InterruptedException If the current thread has been interrupted while waiting for the workers.
+	 */
+	public void decode(ByteBuffer dataBuffer) throws InterruptedException {
+		decode(dataBuffer, dataBuffer.limit());
+	}
+
+	/**
+	 * Decodes all paths of an encoded ink document.
+	 * @param dataBuffer A binary representation of a set of strokes. It should be a direct buffer, for example a memory mapped file, see {@link InkFileMapper}.
+	 * @param dataBufferSizeInBytes Number of bytes to read from the dataBuffer, starting at position 0.
+	 * @throws InterruptedException If the current thread has been interrupted while waiting for the workers.
+	 * @throws IllegalArgumentException If the data is not a sequence of complete path records.
+	 */
+	public void decode(ByteBuffer dataBuffer, int dataBufferSizeInBytes) throws InterruptedException {
+		split(dataBuffer, dataBufferSizeInBytes);
+
+		tasks.clear();
+		for (int i=0;i<chunksCount;i++){
+			final Chunk chunk = chunks.get(i);
+			tasks.add(new Callable<Void>(){
+				@Override
+				public Void call(){
+					chunk.decode();
+					return null;
+				}
+			});
+		}
+		invokeAll();
+
+		// Lay the chunks out in the arena in their original order.
+		pathsCount = 0;
+		pathsDataSize = 0;
+		for (int i=0;i<chunksCount;i++){
+			Chunk chunk = chunks.get(i);
+			chunk.firstPath = pathsCount;
+			chunk.arenaOffset = pathsDataSize;
+			pathsCount += chunk.pathsCount;
+			pathsDataSize += chunk.pointsSize;
+		}
+		pathsData = Utils.reallocNativeFloatBuffer(pathsData, pathsDataSize);
+		ensurePathsCapacity(pathsCount);
+
+		tasks.clear();
+		for (int i=0;i<chunksCount;i++){
+			final Chunk chunk = chunks.get(i);
+			tasks.add(new Callable<Void>(){
+				@Override
+				public Void call(){
+					merge(chunk);
+					return null;
+				}
+			});
+		}
+		invokeAll();
+		pathsData.position(0);
+		pathsData.limit(pathsDataSize);
+
+		if (Logger.LOG_ENABLED) logger.i("decode: " + pathsCount + " paths, " + chunksCount + " chunks, " + pathsDataSize + " floats");
+	}
+
+	/**
+	 * Decodes all paths of an encoded ink document, using its index to decode the paths directly into the arena.
+	 * @param dataBuffer A binary representation of a set of strokes. It should be a direct buffer, for example a memory mapped file, see {@link InkFileMapper}.
+	 * Its limit should be equal to the size of the indexed document.
+	 * @param index The index, built from the same data, see {@link InkIndex#build(ByteBuffer)}.
+	 * @throws InterruptedException If the current thread has been interrupted while waiting for the workers.
+	 * @throws IllegalArgumentException If the index doesn't match the data.
+	 */
+	public void decode(ByteBuffer dataBuffer, InkIndex index) throws InterruptedException {
+		int dataSize = dataBuffer.limit();
+		if (index.getDataSize()!=dataSize){
+			throw new IllegalArgumentException("The index doesn't match the data: " + index.getDataSize() + " != " + dataSize + " bytes");
+		}
+		pathsCount = index.getStrokesCount();
+		ensurePathsCapacity(pathsCount);
+		pathsDataSize = 0;
+		for (int i=0;i<pathsCount;i++){
+			pathOffsets[i] = pathsDataSize;
+			pathSizes[i] = index.getPointsCount(i)*index.getStride(i);
+			pathsDataSize += pathSizes[i];
+		}
+		pathsData = Utils.reallocNativeFloatBuffer(pathsData, pathsDataSize);
+
+		int maxChunksCount = getMaxChunksCount(dataSize);
+		int targetChunkSize = dataSize/maxChunksCount + 1;
+		chunksCount = 0;
+		int firstPath = 0;
+		for (int i=0;i<pathsCount;i++){
+			int end = index.getOffset(i + 1);
+			if (end - index.getOffset(firstPath)>=targetChunkSize || i==pathsCount - 1){
+				addChunk(dataBuffer, index.getOffset(firstPath), end);
+				Chunk chunk = chunks.get(chunksCount - 1);
+				chunk.firstPath = firstPath;
+				chunk.pathsCount = i + 1 - firstPath;
+				firstPath = i + 1;
+			}
+		}
+
+		tasks.clear();
+		for (int i=0;i<chunksCount;i++){
+			final Chunk chunk = chunks.get(i);
+			tasks.add(new Callable<Void>(){
+				@Override
+				public Void call(){
+					decodeIntoArena(chunk);
+					return null;
+				}
+			});
+		}
+		invokeAll();
+		pathsData.position(0);
+		pathsData.limit(pathsDataSize);
+
+		if (Logger.LOG_ENABLED) logger.i("decode: " + pathsCount + " indexed paths, " + chunksCount + " chunks, " + pathsDataSize + " floats");
+	}
+
+	private void decodeIntoArena(Chunk chunk){
+		InkDecoder decoder = new InkDecoder(chunk.data, chunk.data.limit());
+		try {
+			for (int i=0;i<chunk.pathsCount;i++){
+				int path = chunk.firstPath + i;
+				// The size is checked before the copy, a mismatching path must not overwrite the next ones.
+				if (!decoder.decodeNextPath() || decoder.getDecodedPathSize()!=pathSizes[path]){
+					throw new IllegalArgumentException("The index doesn't match the data at stroke " + path);
+				}
+				decoder.getDecodedPathData(pathsData, pathOffsets[path]);
+				pathStrides[path] = decoder.getDecodedPathStride();
+				pathIntColors[path] = decoder.getDecodedPathIntColor();
+				pathWidths[path] = decoder.getDecodedPathWidth();
+				pathTs[path] = decoder.getDecodedPathTs();
+				pathTf[path] = decoder.getDecodedPathTf();
+			}
+		} finally {
+			decoder.release();
+			chunk.data = null;
+		}
+	}
+
+	private int getMaxChunksCount(int dataSize){
+		return Math.max(1, Math.min(threadsCount*CHUNKS_PER_THREAD, dataSize/MIN_CHUNK_SIZE));
+	}
+
+	private void split(ByteBuffer dataBuffer, int dataBufferSizeInBytes){
+		int maxChunksCount = getMaxChunksCount(dataBufferSizeInBytes);
+		int targetChunkSize = dataBufferSizeInBytes/maxChunksCount + 1;
+
+		chunksCount = 0;
+		int chunkStart = 0;
+		int offset = 0;
+		while (offset<dataBufferSizeInBytes){
+			int size = InkRecords.getRecordSize(dataBuffer, offset, dataBufferSizeInBytes);
+			if (size<0 || offset + size>dataBufferSizeInBytes){
+				throw new IllegalArgumentException("Incomplete record at position " + offset);
+			}
+			offset += size;
+			if (offset - chunkStart>=targetChunkSize || offset==dataBufferSizeInBytes){
+				addChunk(dataBuffer, chunkStart, offset);
+				chunkStart = offset;
+			}
+		}
+	}
+
+	private void addChunk(ByteBuffer dataBuffer, int start, int end){
+		if (chunksCount==chunks.size()){
+			chunks.add(new Chunk());
+		}
+		ByteBuffer range = dataBuffer.duplicate();
+		range.limit(end);
+		range.position(start);
+		chunks.get(chunksCount).set(range.slice());
+		chunksCount++;
+	}
+
+	private void invokeAll() throws InterruptedException {
+		List<Future<Void>> futures = executor.invokeAll(tasks);
+		for (Future<Void> future : futures){
+			try {
+				future.get();
+			} catch (ExecutionException e){
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException){
+					throw (RuntimeException)cause;
+				}
+				throw new RuntimeException(cause);
+			}
+		}
+	}
+
+	private void merge(Chunk chunk){
+		FloatBuffer source = chunk.points.duplicate();
+		source.position(0);
+		source.limit(chunk.pointsSize);
+		FloatBuffer target = pathsData.duplicate();
+		target.limit(target.capacity());
+		target.position(chunk.arenaOffset);
+		target.put(source);
+
+		int offset = chunk.arenaOffset;
+		for (int i=0;i<chunk.pathsCount;i++){
+			int path = chunk.firstPath + i;
+			pathOffsets[path] = offset;
+			pathSizes[path] = chunk.sizes[i];
+			pathStrides[path] = chunk.strides[i];
+			pathIntColors[path] = chunk.intColors[i];
+			pathWidths[path] = chunk.widths[i];
+			pathTs[path] = chunk.ts[i];
+			pathTf[path] = chunk.tf[i];
+			offset += chunk.sizes[i];
+		}
+	}
+
+	private void ensurePathsCapacity(int capacity){
+		if (pathOffsets.length<capacity){
+			pathOffsets = new int[capacity];
+			pathSizes = new int[capacity];
+			pathStrides = new int[capacity];
+			pathIntColors = new int[capacity];
+			pathWidths = new float[capacity];
+			pathTs = new float[capacity];
+			pathTf = new float[capacity];
+		}
+	}
+
+	/**
+	 * Returns the arena with the control points of all decoded paths. The paths are stored one after another in their original order.
+	 * @return A float buffer with position 0 and limit equal to {@link #getPathsDataSize()}. It is important to note, that for performance reasons, the same buffer is reused, unless it is too small for the next document.
+	 */
+	public FloatBuffer getPathsData(){
+		return pathsData;
+	}
+
+	/**
+	 * Returns the size of the control points of all decoded paths.
+	 * @return The physical size in floats.
+	 */
+	public int getPathsDataSize(){
+		return pathsDataSize;
+	}
+
+	/**
+	 * Returns the number of the decoded paths.
+	 */
+	public int getPathsCount(){
+		return pathsCount;
+	}
+
+	/**
+	 * Returns the position of the first control point of a path in the arena, see {@link #getPathsData()}.
+	 * @param pathIndex The index of the path in the document.
+	 * @return The position in floats.
+	 */
+	public int getPathOffset(int pathIndex){
+		return pathOffsets[pathIndex];
+	}
+
+	/**
+	 * Returns the size of a path. See {@link InkDecoder#getDecodedPathSize()}.
+	 * @param pathIndex The index of the path in the document.
+	 * @return The physical size in floats of the path.
+	 */
+	public int getPathSize(int pathIndex){
+		return pathSizes[pathIndex];
+	}
+
+	/**
+	 * Returns the stride of a path. See {@link InkDecoder#getDecodedPathStride()}.
+	 * @param pathIndex The index of the path in the document.
+	 * @return The stide of the path, which is the offset from one control point to the next.
+	 */
+	public int getPathStride(int pathIndex){
+		return pathStrides[pathIndex];
+	}
+
+	/**
+	 * Returns the color of a path. See {@link InkDecoder#getDecodedPathIntColor()}.
+	 * @param pathIndex The index of the path in the document.
+	 * @return The int color in RGBA format.
+	 */
+	public int getPathIntColor(int pathIndex){
+		return pathIntColors[pathIndex];
+	}
+
+	/**
+	 * Returns the width of a path. See {@link InkDecoder#getDecodedPathWidth()}.
+	 * @param pathIndex The index of the path in the document.
+	 * @return The width of the path. If this parameter is NAN, the control points include a width property value.
+	 */
+	public float getPathWidth(int pathIndex){
+		return pathWidths[pathIndex];
+	}
+
+	/**
+	 * Returns the starting value for the Catmull-Rom spline of a path. See {@link InkDecoder#getDecodedPathTs()}.
+	 * @param pathIndex The index of the path in the document.
+	 * @return The starting value for the Catmull-Rom spline parameter (0 is the default value).
+	 */
+	public float getPathTs(int pathIndex){
+		return pathTs[pathIndex];
+	}
+
+	/**
+	 * Returns the ending value for the Catmull-Rom spline of a path. See {@link InkDecoder#getDecodedPathTf()}.
+	 * @param pathIndex The index of the path in the document.
+	 * @return The ending value for the Catmull-Rom spline parameter (1 is the default value).
+	 */
+	public float getPathTf(int pathIndex){
+		return pathTf[pathIndex];
+	}
+
+	/**
+	 * Shuts the worker pool down, if it has been created by this instance. A pool passed to the constructor is left running, it is shut down by its owner.
+	 */
+	public void shutdown(){
+		if (bOwnsExecutor){
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * A part of the document, decoded by one worker. Without an index it is decoded into its own buffers, which are merged into the arena afterwards.
+	 */
+	private static class Chunk {
+		ByteBuffer data;
+		FloatBuffer points;
+		int pointsSize;
+		int pathsCount;
+		int[] sizes = new int[16];
+		int[] strides = new int[16];
+		int[] intColors = new int[16];
+		float[] widths = new float[16];
+		float[] ts = new float[16];
+		float[] tf = new float[16];
+		int firstPath;
+		int arenaOffset;
+
+		void set(ByteBuffer data){
+			this.data = data;
+		}
+
+		void decode(){
+			pointsSize = 0;
+			pathsCount = 0;
+			InkDecoder decoder = new InkDecoder(data, data.limit());
+			try {
+				decodePaths(decoder);
+			} finally {
+				decoder.release();
+			}
+			// The data slice is not needed anymore and it should not keep a mapped file alive.
+			data = null;
+		}
+
+		private void decodePaths(InkDecoder decoder){
+			while (decoder.decodeNextPath()){
+				int size = decoder.getDecodedPathSize();
+				ensurePointsCapacity(pointsSize + size);
+				if (pathsCount==sizes.length){
+					growPaths();
+				}
+				decoder.getDecodedPathData(points, pointsSize);
+				sizes[pathsCount] = size;
+				strides[pathsCount] = decoder.getDecodedPathStride();
+				intColors[pathsCount] = decoder.getDecodedPathIntColor();
+				widths[pathsCount] = decoder.getDecodedPathWidth();
+				ts[pathsCount] = decoder.getDecodedPathTs();
+				tf[pathsCount] = decoder.getDecodedPathTf();
+				pointsSize += size;
+				pathsCount++;
+			}
+		}
+
+		private void ensurePointsCapacity(int capacity){
+			if (points!=null && points.capacity()>=capacity){
+				return;
+			}
+			int newCapacity = Math.max(capacity, points==null?1024:points.capacity()*2);
+			FloatBuffer newPoints = Utils.createNativeFloatBuffer(newCapacity);
+			if (points!=null){
+				points.position(0);
+				points.limit(pointsSize);
+				newPoints.put(points);
+			}
+			newPoints.clear();
+			points = newPoints;
+		}
+
+		private void growPaths(){
+			int capacity = sizes.length*2;
+			sizes = Arrays.copyOf(sizes, capacity);
+			strides = Arrays.copyOf(strides, capacity);
+			intColors = Arrays.copyOf(intColors, capacity);
+			widths = Arrays.copyOf(widths, capacity);
+			ts = Arrays.copyOf(ts, capacity);
+			tf = Arrays.copyOf(tf, capacity);
+		}
+	}
+}
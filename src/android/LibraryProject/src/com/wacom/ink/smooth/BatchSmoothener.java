@@ -0,0 +1,278 @@
+/*
+ * Created by Zahari Pastarmadjiev.
+ * Copyright (c) 2014 Wacom. All rights reserved.
+ */
+
+package com.wacom.ink.smooth;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The BatchSmoothener class smoothes many complete strokes with a single call, for example when the strokes of a decoded document are re-processed.
+ * The strokes are stored in a single buffer (an arena) and are described by their offsets, sizes and strides.
+ * <br/>
+ * The work can be distributed among several worker threads. Each worker owns its own {@link JavaMultiChannelSmoothener} instances (one per stride),
+ * so the strokes are smoothed without any synchronization and without native calls.
+ * The workers and their smootheners are reused by the subsequent calls, so the instance is not thread-safe: the smooth method should not be called concurrently from several threads.
+ * <br/>
+ * All smoothers share the channel configuration set with the {@link #setChannelProperties(int, float, float, float, int, int)} and {@link #setEnableChannel(int, boolean)} methods.
+ * Until configured, all channels are enabled and use the default configuration of the {@link MultiChannelSmoothener}.
+ * <br/>
+ * Typical usage:<br/>
+ * <pre>
+ * int resultSize = BatchSmoothener.computeResultOffsets(sizes, strokesCount, resultOffsets);
+ * FloatBuffer result = Utils.createNativeFloatBuffer(resultSize);
+ * batchSmoothener.smooth(points, offsets, sizes, strides, strokesCount, true, result, resultOffsets, resultSizes);
+ * </pre>
+ */
+public class BatchSmoothener {
+	/**
+	 * The maximal supported stride of the strokes.
+	 */
+	public final static int MAX_STRIDE = 8;
+
+	private final ExecutorService executor;
+	private final Worker[] workers;
+
+	private final boolean[] enabled = new boolean[MAX_STRIDE];
+	private final float[] alpha = new float[MAX_STRIDE];
+	private final float[] beta = new float[MAX_STRIDE];
+	private final float[] finalBeta = new float[MAX_STRIDE];
+	private final int[] windowSize = new int[MAX_STRIDE];
+	private final int[] iterations = new int[MAX_STRIDE];
+	private int configurationVersion;
+
+	/**
+	 * Constructs a new instance.
+	 * @param threadsCount The number of the worker threads. If set to 1, the strokes are smoothed on the calling thread.
+	 */
+	public BatchSmoothener(int threadsCount){
+		threadsCount = Math.max(1, threadsCount);
+		workers = new Worker[threadsCount];
+		for (int i=0;i<threadsCount;i++){
+			workers[i] = new Worker();
+		}
+		if (threadsCount>1){
+			executor = Executors.newFixedThreadPool(threadsCount, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "BatchSmoothener");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		} else {
+			executor = null;
+		}
+		for (int c=0;c<MAX_STRIDE;c++){
+			enabled[c] = true;
+			alpha[c] = MultiChannelSmoothener.DEFAULT_ALPHA;
+			beta[c] = MultiChannelSmoothener.DEFAULT_BETA;
+			finalBeta[c] = MultiChannelSmoothener.DEFAULT_FINAL_BETA;
+			windowSize[c] = MultiChannelSmoothener.DEFAULT_WINDOW_SIZE;
+			iterations[c] = MultiChannelSmoothener.DEFAULT_ITERATIONS;
+		}
+	}
+
+	/**
+	 * Constructs a new instance with one worker per available processor.
+	 */
+	public BatchSmoothener(){
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Configures the channel with the specified index for all strokes. See {@link JavaMultiChannelSmoothener#setChannelProperties(int, float, float, float, int, int)}.
+	 */
+	public void setChannelProperties(int channelIndex, float alpha, float beta, float finalBeta, int windowSize, int iterations){
+		this.alpha[channelIndex] = alpha;
+		this.beta[channelIndex] = beta;
+		this.finalBeta[channelIndex] = finalBeta;
+		this.windowSize[channelIndex] = windowSize;
+		this.iterations[channelIndex] = iterations;
+		configurationVersion++;
+	}
+
+	/**
+	 * Enables or disables the smoothing for the channel with the specified index for all strokes.
+	 * @param channelIndex The channel index.
+	 * @param bEnabled If true the data in this channel will be smoothed, otherwise no smoothing will be performed.
+	 */
+	public void setEnableChannel(int channelIndex, boolean bEnabled){
+		enabled[channelIndex] = bEnabled;
+		configurationVersion++;
+	}
+
+	/**
+	 * Calculates where the smoothed strokes should be placed in the result buffer, so that they are packed one after another. Each smoothed stroke has the size of the stroke.
+	 * @param sizes The physical sizes in floats of the strokes.
+	 * @param strokesCount The number of the strokes.
+	 * @param resultOffsets An array, where the offsets of the smoothed strokes will be stored.
+	 * @return The physical size in floats of the result buffer needed.
+	 */
+	public static int computeResultOffsets(int[] sizes, int strokesCount, int[] resultOffsets){
+		int offset = 0;
+		for (int i=0;i<strokesCount;i++){
+			resultOffsets[i] = offset;
+			offset += sizes[i];
+		}
+		return offset;
+	}
+
+	/**
+	 * Smoothes the strokes. Each stroke is smoothed from its beginning, as if the smoother was reset before it.
+	 * @param points The buffer holding the control points of all strokes.
+	 * @param offsets The positions of the strokes in the points buffer.
+	 * @param sizes The physical sizes in floats of the strokes.
+	 * @param strides The strides of the strokes. Each value of a control point is treated as a separate channel.
+	 * @param strokesCount The number of the strokes.
+	 * @param bFinish The value passed to {@link JavaMultiChannelSmoothener#smooth(FloatBuffer, int, boolean, FloatBuffer)}. It doesn't change the smoothed values.
+	 * @param result The buffer, where the smoothed strokes will be written. Can be the points buffer, if the resultOffsets are the offsets.
+	 * @param resultOffsets The positions of the smoothed strokes in the result buffer, for example calculated with {@link #computeResultOffsets(int[], int, int[])}.
+	 * @param resultSizes An array, where the physical sizes in floats of the smoothed strokes will be stored.
+	 */
+	public void smooth(FloatBuffer points, int[] offsets, int[] sizes, int[] strides, int strokesCount, boolean bFinish, FloatBuffer result, int[] resultOffsets, int[] resultSizes){
+		int workersCount = Math.min(workers.length, strokesCount);
+		if (workersCount<=1){
+			workers[0].set(points, offsets, sizes, strides, 0, strokesCount, bFinish, result, resultOffsets, resultSizes, null);
+			workers[0].run();
+			return;
+		}
+
+		// Split the strokes into continuous ranges with similar amount of data.
+		long totalSize = 0;
+		for (int i=0;i<strokesCount;i++){
+			totalSize += sizes[i];
+		}
+		CountDownLatch latch = new CountDownLatch(workersCount);
+		int from = 0;
+		long accumulatedSize = 0;
+		for (int w=0;w<workersCount;w++){
+			int to = from;
+			long targetSize = totalSize*(w+1)/workersCount;
+			if (w==workersCount-1){
+				to = strokesCount;
+			} else {
+				while (to<strokesCount && (to==from || accumulatedSize + sizes[to]<=targetSize)){
+					accumulatedSize += sizes[to];
+					to++;
+				}
+			}
+			workers[w].set(points, offsets, sizes, strides, from, to, bFinish, result, resultOffsets, resultSizes, latch);
+			executor.execute(workers[w]);
+			from = to;
+		}
+		// The workers write into the result buffers, so they must all finish before the method returns. An interrupt is restored afterwards.
+		boolean bInterrupted = false;
+		while (true){
+			try {
+				latch.await();
+				break;
+			} catch (InterruptedException e) {
+				bInterrupted = true;
+			}
+		}
+		if (bInterrupted){
+			Thread.currentThread().interrupt();
+		}
+		RuntimeException failure = null;
+		for (int w=0;w<workersCount;w++){
+			if (failure==null){
+				failure = workers[w].failure;
+			}
+			workers[w].clear();
+		}
+		if (failure!=null){
+			throw failure;
+		}
+	}
+
+	/**
+	 * Stops the worker threads. The instance can't be used after calling this method.
+	 */
+	public void release(){
+		if (executor!=null){
+			executor.shutdown();
+		}
+	}
+
+	private class Worker implements Runnable {
+		private final JavaMultiChannelSmoothener[] smootheners = new JavaMultiChannelSmoothener[MAX_STRIDE+1];
+		private final int[] versions = new int[MAX_STRIDE+1];
+
+		private FloatBuffer points;
+		private int[] offsets;
+		private int[] sizes;
+		private int[] strides;
+		private int from;
+		private int to;
+		private boolean bFinish;
+		private FloatBuffer result;
+		private int[] resultOffsets;
+		private int[] resultSizes;
+		private CountDownLatch latch;
+		private RuntimeException failure;
+
+		void set(FloatBuffer points, int[] offsets, int[] sizes, int[] strides, int from, int to, boolean bFinish, FloatBuffer result, int[] resultOffsets, int[] resultSizes, CountDownLatch latch){
+			this.points = points;
+			this.offsets = offsets;
+			this.sizes = sizes;
+			this.strides = strides;
+			this.from = from;
+			this.to = to;
+			this.bFinish = bFinish;
+			this.result = result;
+			this.resultOffsets = resultOffsets;
+			this.resultSizes = resultSizes;
+			this.latch = latch;
+			this.failure = null;
+		}
+
+		void clear(){
+			set(null, null, null, null, 0, 0, false, null, null, null, null);
+		}
+
+		@Override
+		public void run() {
+			try {
+				for (int i=from;i<to;i++){
+					JavaMultiChannelSmoothener smoothener = getSmoothener(strides[i]);
+					smoothener.reset();
+					resultSizes[i] = smoothener.smooth(points, offsets[i], sizes[i], bFinish, result, resultOffsets[i]);
+				}
+			} catch (RuntimeException e) {
+				if (latch==null){
+					throw e;
+				}
+				failure = e;
+			} finally {
+				if (latch!=null){
+					latch.countDown();
+				}
+			}
+		}
+
+		private JavaMultiChannelSmoothener getSmoothener(int stride){
+			if (stride<1 || stride>MAX_STRIDE){
+				throw new IllegalArgumentException("Unsupported stride: " + stride);
+			}
+			JavaMultiChannelSmoothener smoothener = smootheners[stride];
+			if (smoothener==null || versions[stride]!=configurationVersion){
+				if (smoothener==null){
+					smoothener = new JavaMultiChannelSmoothener(stride);
+					smootheners[stride] = smoothener;
+				}
+				for (int c=0;c<stride;c++){
+					smoothener.setChannelProperties(c, alpha[c], beta[c], finalBeta[c], windowSize[c], iterations[c]);
+					smoothener.setEnableChannel(c, enabled[c]);
+				}
+				versions[stride] = configurationVersion;
+			}
+			return smoothener;
+		}
+	}
+}
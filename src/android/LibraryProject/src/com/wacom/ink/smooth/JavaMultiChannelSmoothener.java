@@ -0,0 +1,457 @@
+/*
+ * Created by Zahari Pastarmadjiev.
+ * Copyright (c) 2014 Wacom. All rights reserved.
+ */
+
+package com.wacom.ink.smooth;
+
+import java.nio.FloatBuffer;
+
+import com.wacom.ink.smooth.MultiChannelSmoothener.SmoothingResult;
+import com.wacom.ink.utils.Utils;
+
+/**
+ * This class is a pure Java counterpart of the {@link MultiChannelSmoothener}. It doesn't use the native library and has the same configuration methods and defaults.
+ * <br/>
+ * For the channels using the double exponential smoothing the output is identical to the output of the native smoothener for the same configuration and input.
+ * Each value is smoothed iterations times: every iteration keeps the last windowSize values it received, runs the double exponential smoothing over them from the oldest one,
+ * and passes the sum of the resulting level and trend to the next iteration. The arithmetic is done in single precision in the same order as in the native library,
+ * so the results match bit by bit on the platforms, where the native library doesn't fuse the multiplications and additions
+ * (the parity was verified against the x86 build of the native library with the recorded fixtures of the SmoothenerParityBenchmark sample).
+ * Like the native smoothener, this class:
+ * <ul>
+ * <li>configures all channels with the default configuration and enables them, see {@link MultiChannelSmoothener#DEFAULT_ALPHA};</li>
+ * <li>stores the finalBeta parameter, but doesn't use it;</li>
+ * <li>ignores the bFinish parameter for the smoothed values: the output always has the size of the input and the state advances.</li>
+ * </ul>
+ * The native smoothener supports at most {@link MultiChannelSmoothener#DEFAULT_ITERATIONS} iterations and keeps the windows when it is reconfigured.
+ * This class supports any number of iterations and clears the state of a channel, when it is reconfigured, so the configuration should be changed only before {@link #reset()}.
+ * <br/>
+ * Alternatively, each channel can use the speed adaptive One Euro filter, see {@link #setChannelOneEuroProperties(int, float, float, float)}.
+ * It is a low-pass filter, whose cutoff frequency grows with the rate of change of the values, so it needs only a constant-time update per value
+ * and adds much less lag than the double exponential smoothing when the pen moves fast. It is well suited for the coordinate channels,
+ * while the width and alpha channels keep the double exponential smoothing. The native library has no counterpart of this filter.
+ * <br/>
+ * The state of all channels is kept in primitive arrays, which are allocated only when the instance is created or configured.
+ * The {@link #smooth(FloatBuffer, int, boolean, FloatBuffer)} method writes into a buffer provided by the caller, so no memory is allocated per call.
+ * The state can be saved into a reusable {@link Snapshot} and restored later, see {@link #saveState(Snapshot)}.
+ */
+public class JavaMultiChannelSmoothener {
+	/**
+	 * Enumeration of the smoothing strategies, which can be used for a channel.
+	 */
+	public static enum SmoothingStrategy {
+		/**
+		 * Double exponential smoothing, optionally after a moving average. Configured with {@link JavaMultiChannelSmoothener#setChannelProperties(int, float, float, float, int, int)}.
+		 */
+		DoubleExponential,
+		/**
+		 * Speed adaptive One Euro filter. Configured with {@link JavaMultiChannelSmoothener#setChannelOneEuroProperties(int, float, float, float)}.
+		 */
+		OneEuro
+	}
+
+
+	/**
+	 * The default input rate in values per second, used by the One Euro filter.
+	 */
+	public final static float DEFAULT_SAMPLE_RATE = 60.0f;
+
+	private final int channelCount;
+
+	private final boolean[] enabled;
+	private final float[] alpha;
+	private final float[] beta;
+	private final float[] finalBeta;
+	private final int[] windowSize;
+	private final int[] iterations;
+	private final SmoothingStrategy[] strategy;
+	private final float[] minCutoff;
+	private final float[] speedCoefficient;
+	private final float[] derivativeCutoff;
+	private float sampleRate = DEFAULT_SAMPLE_RATE;
+
+	// The state of the channels.
+	// The windows of all iterations of a channel receive the same number of values, so they share the write slot and the values count.
+	private final float[][] windows;
+	private final int[] windowSlots;
+	private final int[] windowCounts;
+	// The level and the smoothed rate of change of the One Euro filter.
+	private final float[] level;
+	private final float[] trend;
+	private final float[] lastValue;
+	private int valuesCount;
+
+	private FloatBuffer smoothBuffer;
+	private FloatBuffer smoothFinishBuffer;
+	private final SmoothingResult smoothResult;
+	private final SmoothingResult smoothFinishResult;
+
+	/**
+	 * Create a new instance with one or more channels.
+	 *
+	 * @param channelCount Indicates how many independent data sequences we will smoothed.
+	 */
+	public JavaMultiChannelSmoothener(int channelCount){
+		this.channelCount = channelCount;
+
+		enabled = new boolean[channelCount];
+		alpha = new float[channelCount];
+		beta = new float[channelCount];
+		finalBeta = new float[channelCount];
+		windowSize = new int[channelCount];
+		iterations = new int[channelCount];
+		strategy = new SmoothingStrategy[channelCount];
+		minCutoff = new float[channelCount];
+		speedCoefficient = new float[channelCount];
+		derivativeCutoff = new float[channelCount];
+
+		windows = new float[channelCount][];
+		windowSlots = new int[channelCount];
+		windowCounts = new int[channelCount];
+		level = new float[channelCount];
+		trend = new float[channelCount];
+		lastValue = new float[channelCount];
+
+		smoothResult = new SmoothingResult();
+		smoothFinishResult = new SmoothingResult();
+
+		for (int index=0;index<channelCount;index++){
+			enabled[index] = true;
+			setDefaultProperties(index);
+		}
+	}
+
+	/**
+	 * This method resets the instance. After calling this method, the new data sequence can be smoothed.
+	 */
+	public void reset(){
+		for (int c=0;c<channelCount;c++){
+			windowSlots[c] = 0;
+			windowCounts[c] = 0;
+		}
+		valuesCount = 0;
+	}
+
+	/**
+	 * Configures the channel with the specified index with the default smoothing configuration.
+	 */
+	public void setDefaultProperties(int channelIndex){
+		setChannelProperties(channelIndex, MultiChannelSmoothener.DEFAULT_ALPHA, MultiChannelSmoothener.DEFAULT_BETA, MultiChannelSmoothener.DEFAULT_FINAL_BETA,
+				MultiChannelSmoothener.DEFAULT_WINDOW_SIZE, MultiChannelSmoothener.DEFAULT_ITERATIONS);
+	}
+
+	public void setChannelProperties(int channelIndex, float alpha, float beta, float finalBeta){
+		setChannelProperties(channelIndex, alpha, beta, finalBeta, windowSize[channelIndex], iterations[channelIndex]);
+	}
+
+	/**
+	 * Configures the channel with the specified index to use the double exponential smoothing. The state of the channel is cleared.
+	 * @param channelIndex The channel index.
+	 * @param alpha The level smoothing factor in the range (0, 1]. Smaller values smooth more.
+	 * @param beta The trend smoothing factor in the range [0, 1].
+	 * @param finalBeta Not used, stored for compatibility with the native smoothener.
+	 * @param windowSize The number of the last values smoothed by each iteration. Values smaller than 1 are treated as 1, which disables the smoothing.
+	 * @param iterations How many times each value is smoothed. 0 disables the smoothing.
+	 */
+	public void setChannelProperties(int channelIndex, float alpha, float beta, float finalBeta, int windowSize, int iterations){
+		strategy[channelIndex] = SmoothingStrategy.DoubleExponential;
+		this.alpha[channelIndex] = alpha;
+		this.beta[channelIndex] = beta;
+		this.finalBeta[channelIndex] = finalBeta;
+		this.windowSize[channelIndex] = Math.max(1, windowSize);
+		this.iterations[channelIndex] = Math.max(0, iterations);
+		int length = this.windowSize[channelIndex]*this.iterations[channelIndex];
+		if (windows[channelIndex]==null || windows[channelIndex].length!=length){
+			windows[channelIndex] = new float[length];
+		}
+		windowSlots[channelIndex] = 0;
+		windowCounts[channelIndex] = 0;
+	}
+
+	/**
+	 * Configures the channel with the specified index to use the One Euro filter.
+	 * The cutoff frequency of the filter is minCutoff + speedCoefficient*|rate of change|, where the rate of change is itself low-pass filtered with the derivativeCutoff frequency.
+	 * @param channelIndex The channel index.
+	 * @param minCutoff The cutoff frequency in Hz when the values don't change. Smaller values remove more jitter at low speed.
+	 * @param speedCoefficient How fast the cutoff frequency grows with the rate of change of the values (in units per second). Greater values reduce the lag at high speed.
+	 * @param derivativeCutoff The cutoff frequency in Hz used for the rate of change. 1 works well in most cases.
+	 */
+	public void setChannelOneEuroProperties(int channelIndex, float minCutoff, float speedCoefficient, float derivativeCutoff){
+		if (minCutoff<=0 || derivativeCutoff<=0){
+			throw new IllegalArgumentException("Cutoff frequencies should be greater than 0");
+		}
+		strategy[channelIndex] = SmoothingStrategy.OneEuro;
+		this.minCutoff[channelIndex] = minCutoff;
+		this.speedCoefficient[channelIndex] = speedCoefficient;
+		this.derivativeCutoff[channelIndex] = derivativeCutoff;
+	}
+
+	/**
+	 * Returns the smoothing strategy used by the channel with the specified index.
+	 * @param channelIndex The channel index.
+	 * @return The smoothing strategy.
+	 */
+	public SmoothingStrategy getChannelStrategy(int channelIndex){
+		return strategy[channelIndex];
+	}
+
+	/**
+	 * Sets the rate of the smoothed values. It is used by the One Euro filter to convert its cutoff frequencies into smoothing factors.
+	 * @param sampleRate The rate in values per second. The default value is {@link #DEFAULT_SAMPLE_RATE}.
+	 */
+	public void setSampleRate(float sampleRate){
+		if (sampleRate<=0){
+			throw new IllegalArgumentException("sampleRate should be greater than 0");
+		}
+		this.sampleRate = sampleRate;
+	}
+
+	/**
+	 * Returns the rate of the smoothed values used by the One Euro filter.
+	 * @return The rate in values per second.
+	 */
+	public float getSampleRate(){
+		return sampleRate;
+	}
+
+	/**
+	 * Enables or disables the smoothing for the channel with the specified index.
+	 * @param channelIndex The channel index.
+	 * @param bEnabled If true the data in this channel will be smoothed, otherwise no smoothing will be performed.
+	 */
+	public void setEnableChannel(int channelIndex, boolean bEnabled){
+		enabled[channelIndex] = bEnabled;
+	}
+
+	/**
+	 * Enables the smoothing for the channel with the specified index.
+	 * @param channelIndex The channel index.
+	 */
+	public void enableChannel(int channelIndex){
+		setEnableChannel(channelIndex, true);
+	}
+
+	/**
+	 * Disables the smoothing for the channel with the specified index.
+	 * @param channelIndex The channel index.
+	 */
+	public void disableChannel(int channelIndex){
+		setEnableChannel(channelIndex, false);
+	}
+
+	/**
+	 * Returns the count of the independent data sequences to be smoothed.
+	 * @return The channels count.
+	 */
+	public int getChannelCount(){
+		return channelCount;
+	}
+
+	/**
+	 * This method smoothes the next values in the data sequences. The size of the buffer parameter must be a multiple of the channels count.
+	 * The size of the output is equal to the size of the input. As in the native smoothener, the bFinish parameter doesn't change the smoothed values,
+	 * it only selects which of the two SmoothingResult instances is returned.
+	 * @param buffer A buffer of float values to be smoothed.
+	 * @param size The physical size in floats of the data to be smoothed.
+	 * @param bFinish Should be set to true for the last values of the sequence.
+	 * @return The smoothed values. It is important to note, that for performance reasons, each time this method is called, the same SmoothingResult instance will be returned.
+	 */
+	public SmoothingResult smooth(FloatBuffer buffer, int size, boolean bFinish){
+		if (bFinish){
+			smoothFinishBuffer = Utils.reallocNativeFloatBuffer(smoothFinishBuffer, size);
+			smoothFinishResult.set(smoothFinishBuffer, smooth(buffer, size, true, smoothFinishBuffer));
+			return smoothFinishResult;
+		} else {
+			smoothBuffer = Utils.reallocNativeFloatBuffer(smoothBuffer, size);
+			smoothResult.set(smoothBuffer, smooth(buffer, size, false, smoothBuffer));
+			return smoothResult;
+		}
+	}
+
+	/**
+	 * Same as {@link #smooth(FloatBuffer, int, boolean)}, but writes the smoothed values into the given buffer.
+	 * @param buffer A buffer of float values to be smoothed.
+	 * @param size The physical size in floats of the data to be smoothed.
+	 * @param bFinish Should be set to true for the last values of the sequence.
+	 * @param result The buffer, where the smoothed values will be written starting at position 0. Its capacity should be at least size.
+	 * @return The physical size in floats of the smoothed values.
+	 */
+	public int smooth(FloatBuffer buffer, int size, boolean bFinish, FloatBuffer result){
+		return smooth(buffer, 0, size, bFinish, result, 0);
+	}
+
+	/**
+	 * Same as {@link #smooth(FloatBuffer, int, boolean, FloatBuffer)}, but reads and writes the values at the given positions, so that several sequences can share the same buffers.
+	 * The result buffer can be the input buffer, if the positions are equal.
+	 * @param buffer A buffer of float values to be smoothed.
+	 * @param position The position of the first value to be smoothed.
+	 * @param size The physical size in floats of the data to be smoothed.
+	 * @param bFinish Should be set to true for the last values of the sequence.
+	 * @param result The buffer, where the smoothed values will be written.
+	 * @param resultPosition The position in the result buffer, where the first smoothed value will be written.
+	 * @return The physical size in floats of the smoothed values.
+	 */
+	public int smooth(FloatBuffer buffer, int position, int size, boolean bFinish, FloatBuffer result, int resultPosition){
+		for (int index=0;index<size;index++){
+			int c = index%channelCount;
+			float input = buffer.get(position + index);
+			float value = input;
+			if (enabled[c]){
+				if (strategy[c]==SmoothingStrategy.OneEuro){
+					value = oneEuro(c, input);
+				} else {
+					value = doubleExponential(c, input);
+				}
+			}
+			lastValue[c] = input;
+			if (c==channelCount-1){
+				valuesCount++;
+			}
+			result.put(resultPosition + index, value);
+		}
+		return size;
+	}
+
+	private float doubleExponential(int channel, float value){
+		int size = windowSize[channel];
+		int slot = windowSlots[channel];
+		int count = Math.min(windowCounts[channel] + 1, size);
+		int first = slot - count + 1;
+		if (first<0){
+			first += size;
+		}
+		float[] window = windows[channel];
+		float a = alpha[channel];
+		float b = beta[channel];
+		for (int i=0;i<iterations[channel];i++){
+			int offset = i*size;
+			window[offset + slot] = value;
+			float l = Float.NaN;
+			float t = 0;
+			int index = first;
+			for (int k=0;k<count;k++){
+				float v = window[offset + index];
+				if (Float.isNaN(l)){
+					l = v;
+				} else {
+					float nextLevel = v*a + (1 - a)*(l + t);
+					t = (nextLevel - l)*b + (1 - b)*t;
+					l = nextLevel;
+				}
+				index = index+1==size?0:index+1;
+			}
+			value = t + l;
+		}
+		windowSlots[channel] = slot+1==size?0:slot+1;
+		windowCounts[channel] = count;
+		return value;
+	}
+
+	private float oneEuro(int channel, float value){
+		if (valuesCount==0){
+			level[channel] = value;
+			trend[channel] = 0;
+			return value;
+		}
+		float derivative = (value - lastValue[channel])*sampleRate;
+		trend[channel] += lowPassFactor(derivativeCutoff[channel])*(derivative - trend[channel]);
+		float cutoff = minCutoff[channel] + speedCoefficient[channel]*Math.abs(trend[channel]);
+		level[channel] += lowPassFactor(cutoff)*(value - level[channel]);
+		return level[channel];
+	}
+
+	private float lowPassFactor(float cutoff){
+		float tau = (float)(1.0/(2*Math.PI*cutoff));
+		return 1.0f/(1.0f + tau*sampleRate);
+	}
+
+	/**
+	 * Creates a snapshot instance, which can hold the state of this smoothener.
+	 * @return A new snapshot. It holds the state of a reset smoothener until {@link #saveState(Snapshot)} is called.
+	 */
+	public Snapshot createSnapshot(){
+		return new Snapshot(channelCount);
+	}
+
+	/**
+	 * Copies the current state of the smoothener into the snapshot. Together with {@link #restoreState(Snapshot)} it allows running any number of speculative
+	 * smoothing passes, for example over a predicted or preliminary path, and then continuing from the saved state, without smoothing the sequence from its beginning.
+	 * <br/>
+	 * The cost is proportional to the total size of the windows of the channels (windowSize*iterations values per channel).
+	 * No memory is allocated, unless the configuration of the channels has changed since the snapshot was last used.
+	 * @param snapshot A snapshot created by {@link #createSnapshot()}.
+	 */
+	public void saveState(Snapshot snapshot){
+		if (snapshot.level.length!=channelCount){
+			throw new IllegalArgumentException("The snapshot was created for a different channels count");
+		}
+		System.arraycopy(level, 0, snapshot.level, 0, channelCount);
+		System.arraycopy(trend, 0, snapshot.trend, 0, channelCount);
+		System.arraycopy(lastValue, 0, snapshot.lastValue, 0, channelCount);
+		System.arraycopy(windowSlots, 0, snapshot.windowSlots, 0, channelCount);
+		System.arraycopy(windowCounts, 0, snapshot.windowCounts, 0, channelCount);
+		for (int c=0;c<channelCount;c++){
+			if (snapshot.windows[c]==null || snapshot.windows[c].length!=windows[c].length){
+				snapshot.windows[c] = new float[windows[c].length];
+			}
+			System.arraycopy(windows[c], 0, snapshot.windows[c], 0, windows[c].length);
+		}
+		snapshot.valuesCount = valuesCount;
+	}
+
+	/**
+	 * Sets the state of the smoothener to the state saved in the snapshot. The configuration of the channels should not be changed in between.
+	 * @param snapshot A snapshot filled by {@link #saveState(Snapshot)}.
+	 */
+	public void restoreState(Snapshot snapshot){
+		if (snapshot.level.length!=channelCount){
+			throw new IllegalArgumentException("The snapshot was created for a different channels count");
+		}
+		for (int c=0;c<channelCount;c++){
+			if (snapshot.windowCounts[c]>0 && (snapshot.windows[c]==null || snapshot.windows[c].length!=windows[c].length)){
+				throw new IllegalStateException("The configuration of channel " + c + " has changed since the snapshot was saved");
+			}
+		}
+		System.arraycopy(snapshot.level, 0, level, 0, channelCount);
+		System.arraycopy(snapshot.trend, 0, trend, 0, channelCount);
+		System.arraycopy(snapshot.lastValue, 0, lastValue, 0, channelCount);
+		System.arraycopy(snapshot.windowSlots, 0, windowSlots, 0, channelCount);
+		System.arraycopy(snapshot.windowCounts, 0, windowCounts, 0, channelCount);
+		for (int c=0;c<channelCount;c++){
+			if (snapshot.windowCounts[c]>0){
+				System.arraycopy(snapshot.windows[c], 0, windows[c], 0, windows[c].length);
+			}
+		}
+		valuesCount = snapshot.valuesCount;
+	}
+
+	/**
+	 * This class holds the state of a {@link JavaMultiChannelSmoothener}. Instances are created by {@link JavaMultiChannelSmoothener#createSnapshot()} and should be reused.
+	 */
+	public static class Snapshot {
+		private final float[] level;
+		private final float[] trend;
+		private final float[] lastValue;
+		private final float[][] windows;
+		private final int[] windowSlots;
+		private final int[] windowCounts;
+		private int valuesCount;
+
+		private Snapshot(int channelCount){
+			level = new float[channelCount];
+			trend = new float[channelCount];
+			lastValue = new float[channelCount];
+			windows = new float[channelCount][];
+			windowSlots = new int[channelCount];
+			windowCounts = new int[channelCount];
+		}
+
+		/**
+		 * Returns true if the snapshot holds the state of a smoothener, which has not smoothed any values yet.
+		 */
+		public boolean isEmpty(){
+			return valuesCount==0;
+		}
+	}
+}
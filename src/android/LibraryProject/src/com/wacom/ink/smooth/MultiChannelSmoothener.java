@@ -11,9 +11,37 @@ import com.wacom.ink.utils.Utils;
  *  The implementation is based on the double exponential smoothing technique. 
  *  The result of the smooth operation will depend only on the last several values of the sequence. 
  *  The default smoothener configuration works best for touch input with rate of 60 events per second.
+ *  <br/>
+ *  A pure Java counterpart, which doesn't require the native library and doesn't allocate memory per call, is available: {@link JavaMultiChannelSmoothener}.
  */
 public class MultiChannelSmoothener {
 	private final static Logger logger = new Logger(MultiChannelSmoothener.class, true);
+	
+	/**
+	 * The level smoothing factor of the default configuration of the native library, see {@link #setDefaultProperties(int)}.
+	 */
+	public final static float DEFAULT_ALPHA = 0.75f;
+	
+	/**
+	 * The trend smoothing factor of the default configuration of the native library, see {@link #setDefaultProperties(int)}.
+	 */
+	public final static float DEFAULT_BETA = 0.04844f;
+	
+	/**
+	 * The finalBeta parameter of the default configuration of the native library, see {@link #setDefaultProperties(int)}. The native library stores it, but doesn't use it for smoothing.
+	 */
+	public final static float DEFAULT_FINAL_BETA = 0.01253f;
+	
+	/**
+	 * The window size of the default configuration of the native library, see {@link #setDefaultProperties(int)}.
+	 */
+	public final static int DEFAULT_WINDOW_SIZE = 4;
+	
+	/**
+	 * The iterations count of the default configuration of the native library, see {@link #setDefaultProperties(int)}.
+	 */
+	public final static int DEFAULT_ITERATIONS = 9;
+	
 	private long handle;
 	private int channelCount;
 	
@@ -123,11 +151,10 @@ public class MultiChannelSmoothener {
 	
 	/**
 	 * This method smoothes the next values in the data sequences. The size of the buffer parameter must be a multiple of the channels count. 
-	 * If the bFinish parameter is set to true, the method will return sequences that will smoothly reach the last set of the values passed - the last set of values will be equal to the last set of the values passed. 
-	 * It is important to note that in this case the internal state of the instance will not change.
+	 * The size of the output is equal to the size of the input. The bFinish parameter doesn't change the smoothed values, it only selects which of the two SmoothingResult instances is returned.
 	 * @param buffer A buffer of float values to be smoothed.
 	 * @param size The physical size in floats of the data to be smoothed.
-	 * @param bFinish If set to false the size of the output will be equal to the size of the input. If set to true the size of the output could be greater than the size of the input. 
+	 * @param bFinish Should be set to true for the last values of the sequence. 
 	 * @return The smoothed values. It is important to note, that for performance reasons, each time this method is called, the same SmoothingResult instance will be returned.
 	 */
 	public SmoothingResult smooth(FloatBuffer buffer, int size, boolean bFinish){
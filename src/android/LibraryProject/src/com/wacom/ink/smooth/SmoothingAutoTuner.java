@@ -0,0 +1,293 @@
+/*
+ * Created by Zahari Pastarmadjiev.
+ * Copyright (c) 2014 Wacom. All rights reserved.
+ */
+
+package com.wacom.ink.smooth;
+
+import java.util.Arrays;
+
+/**
+ * The SmoothingAutoTuner class adapts the configuration of a smoothener to the rate of the input device.
+ * <br/>
+ * The smoothing parameters are defined per sample, so a configuration tuned for touch input with rate of 60 events per second
+ * covers only half of the time on a 120 Hz pen and a quarter of it on a 240 Hz pen. The auto tuner measures the sample rate and the timing jitter
+ * over the first samples of each stroke and rescales the reference configuration of each channel, so the smoothing strength stays constant in wall-clock time:
+ * <ul>
+ * <li>alpha and beta are converted so that the exponential smoothing has the same time constant;</li>
+ * <li>the moving average window covers the same time span (a window of size 1 remains disabled);</li>
+ * <li>finalBeta is passed unchanged, because it doesn't affect the smoothed values.</li>
+ * </ul>
+ * If the timing jitter of the measured samples is too high, the measurement is ignored and the previous estimation is kept.
+ * <br/>
+ * The auto tuner has no reference configuration of its own: the configuration of each channel at the reference rate has to be set with
+ * {@link #setReferenceProperties(int, float, float, float, int, int)} before it is applied. To rescale the default configuration of a {@link MultiChannelSmoothener},
+ * pass its DEFAULT_* values, see {@link MultiChannelSmoothener#DEFAULT_ALPHA}.
+ * <br/>
+ * Since reconfiguring a smoothener in the middle of a sequence would break its state, the new configuration should be applied at the beginning of the next stroke:<br/>
+ * <pre>
+ * // On stroke begin
+ * if (autoTuner.hasNewEstimation()){
+ *     autoTuner.applyTo(smoothener);
+ * }
+ * smoothener.reset();
+ * autoTuner.reset();
+ * autoTuner.addSample(timestamp);
+ *
+ * // On each input sample
+ * autoTuner.addSample(timestamp);
+ * </pre>
+ */
+public class SmoothingAutoTuner {
+	/**
+	 * The input rate in samples per second, for which the reference configuration is defined by default.
+	 */
+	public final static float DEFAULT_REFERENCE_RATE = 60.0f;
+
+	/**
+	 * The default number of the sample intervals measured at the beginning of each stroke.
+	 */
+	public final static int DEFAULT_CALIBRATION_SAMPLES = 8;
+
+	/**
+	 * The default maximal jitter, see {@link #getJitter()}, for which the measurement is accepted.
+	 */
+	public final static float DEFAULT_MAX_JITTER = 0.5f;
+
+	/**
+	 * The maximal size of the moving average window after rescaling.
+	 */
+	public final static int MAX_WINDOW_SIZE = 32;
+
+	private final static float RATE_TOLERANCE = 0.1f;
+
+	private final int channelCount;
+	private final float[] alpha;
+	private final float[] beta;
+	private final float[] finalBeta;
+	private final int[] windowSize;
+	private final int[] iterations;
+	private final boolean[] configured;
+
+	private float referenceRate = DEFAULT_REFERENCE_RATE;
+	private float maxJitter = DEFAULT_MAX_JITTER;
+
+	private final double[] intervals;
+	private final double[] sortedIntervals;
+	private int intervalsCount;
+	private boolean bHasSample;
+	private double lastTimestamp;
+
+	private float sampleRate;
+	private float jitter;
+	private float appliedRate;
+
+	/**
+	 * Constructs a new instance.
+	 * @param channelCount The number of the channels of the smootheners, which will be configured. The reference configuration of each channel has to be set with {@link #setReferenceProperties(int, float, float, float, int, int)}.
+	 */
+	public SmoothingAutoTuner(int channelCount){
+		this(channelCount, DEFAULT_CALIBRATION_SAMPLES);
+	}
+
+	/**
+	 * Constructs a new instance.
+	 * @param channelCount The number of the channels of the smootheners, which will be configured.
+	 * @param calibrationSamples The number of the sample intervals measured at the beginning of each stroke.
+	 */
+	public SmoothingAutoTuner(int channelCount, int calibrationSamples){
+		if (calibrationSamples<2){
+			throw new IllegalArgumentException("calibrationSamples should be at least 2");
+		}
+		this.channelCount = channelCount;
+		alpha = new float[channelCount];
+		beta = new float[channelCount];
+		finalBeta = new float[channelCount];
+		windowSize = new int[channelCount];
+		iterations = new int[channelCount];
+		configured = new boolean[channelCount];
+		intervals = new double[calibrationSamples];
+		sortedIntervals = new double[calibrationSamples];
+		sampleRate = referenceRate;
+		appliedRate = referenceRate;
+	}
+
+	/**
+	 * Sets the configuration of the channel with the specified index for the reference input rate.
+	 * The parameters have the same meaning as in {@link JavaMultiChannelSmoothener#setChannelProperties(int, float, float, float, int, int)}.
+	 */
+	public void setReferenceProperties(int channelIndex, float alpha, float beta, float finalBeta, int windowSize, int iterations){
+		this.alpha[channelIndex] = alpha;
+		this.beta[channelIndex] = beta;
+		this.finalBeta[channelIndex] = finalBeta;
+		this.windowSize[channelIndex] = Math.max(1, windowSize);
+		this.iterations[channelIndex] = Math.max(1, iterations);
+		configured[channelIndex] = true;
+		// Force reconfiguration of the smootheners.
+		appliedRate = 0;
+	}
+
+	/**
+	 * Sets the input rate, for which the reference configuration is defined.
+	 * @param referenceRate The rate in samples per second. The default value is {@link #DEFAULT_REFERENCE_RATE}.
+	 */
+	public void setReferenceRate(float referenceRate){
+		if (referenceRate<=0){
+			throw new IllegalArgumentException("referenceRate should be greater than 0");
+		}
+		this.referenceRate = referenceRate;
+		appliedRate = 0;
+	}
+
+	/**
+	 * Sets the maximal jitter, for which the measurement is accepted.
+	 * @param maxJitter The maximal jitter, see {@link #getJitter()}.
+	 */
+	public void setMaxJitter(float maxJitter){
+		this.maxJitter = maxJitter;
+	}
+
+	/**
+	 * Starts a new measurement. This method should be called at the beginning of each stroke. The last estimation is preserved.
+	 */
+	public void reset(){
+		intervalsCount = 0;
+		bHasSample = false;
+	}
+
+	/**
+	 * Measures the next input sample. The samples after the first calibration samples of the stroke are ignored.
+	 * @param timestamp The timestamp of the sample in seconds.
+	 */
+	public void addSample(double timestamp){
+		if (intervalsCount==intervals.length){
+			return;
+		}
+		if (bHasSample){
+			double interval = timestamp - lastTimestamp;
+			if (interval<=0){
+				// Samples with the same timestamp don't carry any information about the rate.
+				return;
+			}
+			intervals[intervalsCount++] = interval;
+			if (intervalsCount==intervals.length){
+				estimate();
+			}
+		}
+		bHasSample = true;
+		lastTimestamp = timestamp;
+	}
+
+	private void estimate(){
+		System.arraycopy(intervals, 0, sortedIntervals, 0, intervalsCount);
+		Arrays.sort(sortedIntervals, 0, intervalsCount);
+		// The median is not affected by the occasional delayed or batched events.
+		double median = sortedIntervals[intervalsCount/2];
+		double deviation = 0;
+		for (int i=0;i<intervalsCount;i++){
+			deviation += Math.abs(intervals[i] - median);
+		}
+		float measuredJitter = (float)(deviation/intervalsCount/median);
+		jitter = measuredJitter;
+		if (measuredJitter<=maxJitter){
+			sampleRate = (float)(1.0/median);
+		}
+	}
+
+	/**
+	 * Returns true if the sample rate has been measured during the current stroke.
+	 */
+	public boolean isCalibrated(){
+		return intervalsCount==intervals.length;
+	}
+
+	/**
+	 * Returns the estimated input rate. Before the first successful measurement, the reference rate is returned.
+	 * @return The rate in samples per second.
+	 */
+	public float getSampleRate(){
+		return sampleRate;
+	}
+
+	/**
+	 * Returns the timing jitter of the last measurement, defined as the mean absolute deviation of the sample intervals from their median, divided by the median.
+	 * @return The relative jitter.
+	 */
+	public float getJitter(){
+		return jitter;
+	}
+
+	/**
+	 * Returns true if the estimated input rate differs significantly from the rate, for which the smootheners were configured the last time.
+	 */
+	public boolean hasNewEstimation(){
+		return Math.abs(sampleRate - appliedRate)>RATE_TOLERANCE*sampleRate;
+	}
+
+	/**
+	 * Configures all channels of the smoothener for the estimated input rate. The enabled state of the channels is not changed.
+	 * @param smoothener The smoothener. It should not be in the middle of a sequence.
+	 * @throws IllegalStateException If the reference configuration of a channel has not been set.
+	 */
+	public void applyTo(MultiChannelSmoothener smoothener){
+		float ratio = referenceRate/sampleRate;
+		int count = Math.min(channelCount, smoothener.getChannelCount());
+		for (int c=0;c<count;c++){
+			checkConfigured(c);
+		}
+		for (int c=0;c<count;c++){
+			smoothener.setChannelProperties(c, scaleFactor(alpha[c], ratio), scaleFactor(beta[c], ratio), finalBeta[c], scaleWindowSize(windowSize[c], ratio), iterations[c]);
+		}
+		appliedRate = sampleRate;
+	}
+
+	/**
+	 * Configures all channels of the smoothener for the estimated input rate. The enabled state of the channels is not changed.
+	 * The channels using the One Euro filter keep their configuration, only the sample rate of the smoothener is updated.
+	 * @param smoothener The smoothener. It should not be in the middle of a sequence.
+	 * @throws IllegalStateException If the reference configuration of a channel using the double exponential smoothing has not been set.
+	 */
+	public void applyTo(JavaMultiChannelSmoothener smoothener){
+		float ratio = referenceRate/sampleRate;
+		int count = Math.min(channelCount, smoothener.getChannelCount());
+		for (int c=0;c<count;c++){
+			if (smoothener.getChannelStrategy(c)!=JavaMultiChannelSmoothener.SmoothingStrategy.OneEuro){
+				checkConfigured(c);
+			}
+		}
+		smoothener.setSampleRate(sampleRate);
+		for (int c=0;c<count;c++){
+			if (smoothener.getChannelStrategy(c)==JavaMultiChannelSmoothener.SmoothingStrategy.OneEuro){
+				continue;
+			}
+			smoothener.setChannelProperties(c, scaleFactor(alpha[c], ratio), scaleFactor(beta[c], ratio), finalBeta[c], scaleWindowSize(windowSize[c], ratio), iterations[c]);
+		}
+		appliedRate = sampleRate;
+	}
+
+	private void checkConfigured(int channelIndex){
+		if (!configured[channelIndex]){
+			throw new IllegalStateException("The reference configuration of channel " + channelIndex + " has not been set");
+		}
+	}
+
+	/**
+	 * Converts a per-sample smoothing factor, so that the exponential smoothing has the same time constant at a different rate.
+	 * @param factor The smoothing factor at the reference rate.
+	 * @param ratio The ratio between the reference rate and the actual rate.
+	 * @return The smoothing factor at the actual rate.
+	 */
+	static float scaleFactor(float factor, float ratio){
+		if (factor>=1 || factor<=0){
+			return factor;
+		}
+		return (float)(1.0 - Math.pow(1.0 - factor, ratio));
+	}
+
+	static int scaleWindowSize(int windowSize, float ratio){
+		if (windowSize<=1){
+			return windowSize;
+		}
+		return Math.max(2, Math.min(MAX_WINDOW_SIZE, Math.round(windowSize/ratio)));
+	}
+}
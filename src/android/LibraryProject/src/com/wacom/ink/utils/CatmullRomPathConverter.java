@@ -0,0 +1,226 @@
+/*
+ * Created by Zahari Pastarmadjiev.
+ * Copyright (c) 2014 Wacom. All rights reserved.
+ */
+
+package com.wacom.ink.utils;
+
+import java.nio.FloatBuffer;
+
+import android.graphics.Path;
+
+import com.wacom.ink.geometry.CatmullRomSpline;
+
+/**
+ * The CatmullRomPathConverter class incrementally converts the Catmull-Rom control points of a growing path into cubic Bezier curves.
+ * It is intended for paths, which are redrawn on every frame, like the lasso of a selection tool.
+ * <br/>
+ * Only the segments affected by the control points changed since the previous update are converted again.
+ * The Bezier control points are stored in a reusable float arena, see {@link #getBezierPoints()}, and the segments which didn't change in the last update
+ * are appended once to a stable android.graphics.Path, see {@link #getStablePath()}. The last few segments, which can still change, are kept in a small tail path, see {@link #getTailPath()}.
+ * Drawing both paths costs only the conversion of the changed segments per frame. {@link #getPath(boolean)} returns a single path, which can be closed,
+ * but it has to copy the stable path, which is linear in the number of the segments (a native copy of the path points).
+ * <br/>
+ * The segment i is the curve between the control points i+1 and i+2, as in {@link com.wacom.ink.geometry.CatmullRomSpline}.
+ * <br/>
+ * Typical usage:<br/>
+ * <pre>
+ * converter.reset();                // on path begin
+ * converter.update(pathBuilder.getPathBuffer(), 0, pathBuilder.getPathSize(), pathBuilder.getStride(), pathBuilder.getPathLastUpdatePosition());
+ * canvas.drawPath(converter.getStablePath(), paint);
+ * canvas.drawPath(converter.getTailPath(), paint);
+ * </pre>
+ */
+public class CatmullRomPathConverter {
+	private final static int FLOATS_PER_SEGMENT = 6;
+
+	private final int xChannel;
+	private final int yChannel;
+
+	private float[] bezierPoints;
+	// The Bezier control points of a single segment: x0..x3, y0..y3.
+	private final float[] segmentPoints = new float[8];
+	private int segmentsCount;
+	private boolean bHasStart;
+
+	private final Path stablePath;
+	private int stablePathSegmentsCount;
+	private final Path tailPath;
+	private final Path path;
+
+	/**
+	 * Constructs a new instance for control points with x and y coordinates at offsets 0 and 1.
+	 */
+	public CatmullRomPathConverter(){
+		this(0, 1);
+	}
+
+	/**
+	 * Constructs a new instance.
+	 * @param xChannel The offset of the x coordinate within a control point.
+	 * @param yChannel The offset of the y coordinate within a control point.
+	 */
+	public CatmullRomPathConverter(int xChannel, int yChannel){
+		this.xChannel = xChannel;
+		this.yChannel = yChannel;
+		bezierPoints = new float[2 + 64*FLOATS_PER_SEGMENT];
+		stablePath = new Path();
+		tailPath = new Path();
+		path = new Path();
+	}
+
+	/**
+	 * Removes all segments. This method should be called when a new path begins.
+	 */
+	public void reset(){
+		segmentsCount = 0;
+		bHasStart = false;
+		stablePath.rewind();
+		stablePathSegmentsCount = 0;
+		tailPath.rewind();
+	}
+
+	/**
+	 * Updates the Bezier curves with the current control points of the path.
+	 * @param buffer The control points.
+	 * @param position The position of the first control point in the buffer.
+	 * @param size The physical size in floats of the control points.
+	 * @param stride The stride of the control points.
+	 * @param updatePosition The position in the buffer, starting from which the control points could have changed since the previous update,
+	 * for example the value returned by {@link com.wacom.ink.path.PathBuilder#getPathLastUpdatePosition()}. Pass the position parameter to convert all segments again.
+	 * @return The number of the segments, which were converted.
+	 */
+	public int update(FloatBuffer buffer, int position, int size, int stride, int updatePosition){
+		int pointsCount = size/stride;
+		int newSegmentsCount = Math.max(0, pointsCount - 3);
+		int firstChangedPoint = Math.max(0, (updatePosition - position)/stride);
+		// The segment i depends on the control points from i to i+3.
+		int unchangedSegmentsCount = Math.min(Math.min(segmentsCount, newSegmentsCount), Math.max(0, firstChangedPoint - 3));
+		if (!bHasStart || firstChangedPoint<=1){
+			unchangedSegmentsCount = 0;
+		}
+
+		// The start point changes only together with the first segment.
+		if (unchangedSegmentsCount<stablePathSegmentsCount || unchangedSegmentsCount==0){
+			stablePath.rewind();
+			stablePathSegmentsCount = 0;
+		}
+
+		ensureCapacity(newSegmentsCount);
+		if (pointsCount>0){
+			int startIndex = position + Math.min(1, pointsCount-1)*stride;
+			bezierPoints[0] = buffer.get(startIndex + xChannel);
+			bezierPoints[1] = buffer.get(startIndex + yChannel);
+			bHasStart = true;
+		} else {
+			bHasStart = false;
+		}
+		for (int s=unchangedSegmentsCount;s<newSegmentsCount;s++){
+			convertSegment(buffer, position + s*stride, stride, 2 + s*FLOATS_PER_SEGMENT);
+		}
+		segmentsCount = newSegmentsCount;
+
+		// The segments which survived this update are likely to survive the next ones too.
+		if (unchangedSegmentsCount>stablePathSegmentsCount){
+			if (stablePath.isEmpty()){
+				stablePath.moveTo(bezierPoints[0], bezierPoints[1]);
+			}
+			appendSegments(stablePath, stablePathSegmentsCount, unchangedSegmentsCount);
+			stablePathSegmentsCount = unchangedSegmentsCount;
+		}
+
+		tailPath.rewind();
+		if (bHasStart){
+			int offset = stablePathSegmentsCount*FLOATS_PER_SEGMENT;
+			tailPath.moveTo(bezierPoints[offset], bezierPoints[offset+1]);
+			appendSegments(tailPath, stablePathSegmentsCount, segmentsCount);
+		}
+
+		return newSegmentsCount - unchangedSegmentsCount;
+	}
+
+	private void convertSegment(FloatBuffer buffer, int index, int stride, int offset){
+		CatmullRomSpline.toBezier(buffer, index, stride, xChannel, 0, segmentPoints, 0);
+		CatmullRomSpline.toBezier(buffer, index, stride, yChannel, 0, segmentPoints, 4);
+		bezierPoints[offset] = segmentPoints[1];
+		bezierPoints[offset+1] = segmentPoints[5];
+		bezierPoints[offset+2] = segmentPoints[2];
+		bezierPoints[offset+3] = segmentPoints[6];
+		bezierPoints[offset+4] = segmentPoints[3];
+		bezierPoints[offset+5] = segmentPoints[7];
+	}
+
+	private void appendSegments(Path target, int from, int to){
+		for (int s=from;s<to;s++){
+			int offset = 2 + s*FLOATS_PER_SEGMENT;
+			target.cubicTo(bezierPoints[offset], bezierPoints[offset+1], bezierPoints[offset+2], bezierPoints[offset+3], bezierPoints[offset+4], bezierPoints[offset+5]);
+		}
+	}
+
+	private void ensureCapacity(int segmentsCount){
+		int capacity = 2 + segmentsCount*FLOATS_PER_SEGMENT;
+		if (capacity>bezierPoints.length){
+			float[] newBezierPoints = new float[Math.max(capacity, bezierPoints.length*2)];
+			System.arraycopy(bezierPoints, 0, newBezierPoints, 0, 2 + this.segmentsCount*FLOATS_PER_SEGMENT);
+			bezierPoints = newBezierPoints;
+		}
+	}
+
+	/**
+	 * Returns the path with the segments, which didn't change during the last update. The path is only appended to, while the same path is being updated.
+	 * @return The path. It is important to note, that for performance reasons, each time this method is called, the same Path instance will be returned.
+	 */
+	public Path getStablePath(){
+		return stablePath;
+	}
+
+	/**
+	 * Returns the path with the remaining segments. It starts at the end of the stable path, see {@link #getStablePath()}, and contains only a few segments.
+	 * @return The path. It is important to note, that for performance reasons, each time this method is called, the same Path instance will be returned.
+	 */
+	public Path getTailPath(){
+		return tailPath;
+	}
+
+	/**
+	 * Returns the path with all converted segments. The stable path is copied into it, so the cost is linear in the number of the segments,
+	 * use {@link #getStablePath()} and {@link #getTailPath()} when the contour doesn't need to be closed.
+	 * @param bClose If true, the contour of the path will be closed.
+	 * @return The path. It is important to note, that for performance reasons, each time this method is called, the same Path instance will be returned.
+	 */
+	public Path getPath(boolean bClose){
+		path.set(stablePath);
+		if (bHasStart && stablePathSegmentsCount==0){
+			path.moveTo(bezierPoints[0], bezierPoints[1]);
+		}
+		appendSegments(path, stablePathSegmentsCount, segmentsCount);
+		if (bClose && bHasStart){
+			path.close();
+		}
+		return path;
+	}
+
+	/**
+	 * Returns the Bezier curves as a float array: the start point (x, y), followed by (c1x, c1y, c2x, c2y, x, y) for each segment.
+	 * @return The Bezier points. It is important to note, that for performance reasons, the same array is reused, unless the number of the segments grows beyond its capacity.
+	 */
+	public float[] getBezierPoints(){
+		return bezierPoints;
+	}
+
+	/**
+	 * Returns the number of the used values in the array returned by {@link #getBezierPoints()}.
+	 * @return The size of the Bezier points, or 0 if the path is empty.
+	 */
+	public int getBezierPointsSize(){
+		return bHasStart?2 + segmentsCount*FLOATS_PER_SEGMENT:0;
+	}
+
+	/**
+	 * Returns the number of the converted segments.
+	 * @return The segments count.
+	 */
+	public int getSegmentsCount(){
+		return segmentsCount;
+	}
+}
@@ -0,0 +1,412 @@
+/*
+ * Created by Zahari Pastarmadjiev.
+ * Copyright (c) 2014 Wacom. All rights reserved.
+ */
+
+package com.wacom.ink.utils;
+
+import java.nio.FloatBuffer;
+
+import android.view.MotionEvent;
+
+/**
+ * The TouchInputQueue class decouples the touch input from the rendering.
+ * All samples of the tracked pointer, including the historical ones batched by the Android Framework, are stored in a preallocated ring buffer with their exact timestamps.
+ * Once per display frame the samples up to the frame time are moved into a batch, which should be passed to the path builder with a single call,
+ * so high rate pens produce one path part and one render per frame instead of one per sample.
+ * <br/>
+ * Typical usage with a {@link android.view.Choreographer.FrameCallback}:<br/>
+ * <pre>
+ * public boolean onTouch(View v, MotionEvent event) {
+ *     inputQueue.add(event);
+ *     return true;
+ * }
+ *
+ * public void doFrame(long frameTimeNanos) {
+ *     if (inputQueue.poll(TouchInputQueue.getFrameTimestamp(frameTimeNanos))>0){
+ *         int index = 0;
+ *         if (inputQueue.hasBegin()){
+ *             part = pathBuilder.beginPath(inputQueue.getX(0), inputQueue.getY(0), inputQueue.getTimestamp(0));
+ *             index = 1;
+ *         }
+ *         int movesCount = inputQueue.getBatchSize() - index - (inputQueue.hasEnd()?1:0);
+ *         if (movesCount>0){
+ *             part = pathBuilder.addPoints(inputQueue.getSpeedPathPoints(index, movesCount, pathBuilder.getBeginTimestamp()), movesCount);
+ *         }
+ *         ...
+ *     }
+ * }
+ * </pre>
+ * The begin, move and end path parts should be smoothed and added to the path builder as usual.
+ * <br/>
+ * The batch is resampled to the frame time: if the pointer moved past the frame time and the next sample is already queued,
+ * a sample at the frame timestamp, interpolated between the last sample before the frame and the next one, is appended to the batch, see {@link #isResampled()}.
+ * The real samples keep their exact timestamps. A sample is never extrapolated beyond the last queued one, so a batch polled before the next sample arrives ends at the last real sample.
+ * The resampling can be disabled with {@link #setResampling(boolean)}.
+ * <br/>
+ * If the ring buffer gets full before it is polled, the last queued move sample is replaced by the new move sample.
+ * The samples, which begin or end a stroke, are never dropped: if they can't be stored, the ring buffer grows.
+ */
+public class TouchInputQueue {
+	/**
+	 * The default capacity of the ring buffer.
+	 */
+	public final static int DEFAULT_CAPACITY = 256;
+
+	private final static byte PHASE_MOVE = 0;
+	private final static byte PHASE_BEGIN = 1;
+	private final static byte PHASE_END = 2;
+
+	private int capacity;
+	private float[] xs;
+	private float[] ys;
+	private float[] pressures;
+	private double[] timestamps;
+	private byte[] phases;
+	private int head;
+	private int count;
+	private int pointerId = -1;
+	private int droppedSamplesCount;
+
+	private float[] batchXs;
+	private float[] batchYs;
+	private float[] batchPressures;
+	private double[] batchTimestamps;
+	private int batchSize;
+	private boolean bBatchBegin;
+	private boolean bBatchEnd;
+	private boolean bBatchResampled;
+	private boolean bResampling = true;
+
+	private FloatBuffer points;
+
+	/**
+	 * Constructs a new instance with the default capacity.
+	 */
+	public TouchInputQueue(){
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructs a new instance.
+	 * @param capacity The maximal number of move samples, which can be queued between two {@link #poll(double)} calls.
+	 */
+	public TouchInputQueue(int capacity){
+		allocate(Math.max(2, capacity));
+	}
+
+	private void allocate(int capacity){
+		this.capacity = capacity;
+		xs = new float[capacity];
+		ys = new float[capacity];
+		pressures = new float[capacity];
+		timestamps = new double[capacity];
+		phases = new byte[capacity];
+		// One more sample for the resampled one.
+		batchXs = new float[capacity+1];
+		batchYs = new float[capacity+1];
+		batchPressures = new float[capacity+1];
+		batchTimestamps = new double[capacity+1];
+		points = Utils.createNativeFloatBuffer((capacity+1)*3);
+	}
+
+	private void grow(){
+		float[] oldXs = xs;
+		float[] oldYs = ys;
+		float[] oldPressures = pressures;
+		double[] oldTimestamps = timestamps;
+		byte[] oldPhases = phases;
+		float[] oldBatchXs = batchXs;
+		float[] oldBatchYs = batchYs;
+		float[] oldBatchPressures = batchPressures;
+		double[] oldBatchTimestamps = batchTimestamps;
+		int oldCapacity = capacity;
+		int first = (head + oldCapacity - count)%oldCapacity;
+		allocate(oldCapacity*2);
+		for (int i=0;i<count;i++){
+			int index = (first + i)%oldCapacity;
+			xs[i] = oldXs[index];
+			ys[i] = oldYs[index];
+			pressures[i] = oldPressures[index];
+			timestamps[i] = oldTimestamps[index];
+			phases[i] = oldPhases[index];
+		}
+		head = count;
+		System.arraycopy(oldBatchXs, 0, batchXs, 0, batchSize);
+		System.arraycopy(oldBatchYs, 0, batchYs, 0, batchSize);
+		System.arraycopy(oldBatchPressures, 0, batchPressures, 0, batchSize);
+		System.arraycopy(oldBatchTimestamps, 0, batchTimestamps, 0, batchSize);
+	}
+
+	/**
+	 * Enables or disables the resampling of the batches to the frame time.
+	 * @param bResampling If true, which is the default, a sample interpolated at the frame timestamp is appended to the batch when possible.
+	 */
+	public void setResampling(boolean bResampling){
+		this.bResampling = bResampling;
+	}
+
+	/**
+	 * Converts the frame time reported by the {@link android.view.Choreographer} into a timestamp comparable with the timestamps of the MotionEvents.
+	 * @param frameTimeNanos The frame time in nanoseconds.
+	 * @return The timestamp in seconds.
+	 */
+	public static double getFrameTimestamp(long frameTimeNanos){
+		return frameTimeNanos/1000000000.0;
+	}
+
+	/**
+	 * Removes all queued samples and stops tracking the current pointer.
+	 */
+	public void clear(){
+		head = 0;
+		count = 0;
+		batchSize = 0;
+		bBatchBegin = false;
+		bBatchEnd = false;
+		bBatchResampled = false;
+		pointerId = -1;
+	}
+
+	/**
+	 * Queues the samples of the MotionEvent. Only a single pointer is tracked: the first pointer going down, until it goes up.
+	 * @param event The MotionEvent.
+	 * @return True if the event contained samples of the tracked pointer, false otherwise.
+	 */
+	public boolean add(MotionEvent event){
+		int actionIndex = event.getActionIndex();
+		switch (event.getActionMasked()){
+			case MotionEvent.ACTION_DOWN:
+			case MotionEvent.ACTION_POINTER_DOWN:
+				if (pointerId!=-1){
+					return false;
+				}
+				pointerId = event.getPointerId(actionIndex);
+				put(event.getX(actionIndex), event.getY(actionIndex), event.getPressure(actionIndex), TouchUtils.getTimestamp(event), PHASE_BEGIN);
+				return true;
+			case MotionEvent.ACTION_MOVE:
+				if (pointerId==-1){
+					return false;
+				}
+				int pointerIndex = event.findPointerIndex(pointerId);
+				if (pointerIndex==-1){
+					return false;
+				}
+				for (int h=0;h<event.getHistorySize();h++){
+					put(event.getHistoricalX(pointerIndex, h), event.getHistoricalY(pointerIndex, h), event.getHistoricalPressure(pointerIndex, h),
+							TouchUtils.getTimestamp(event.getHistoricalEventTime(h)), PHASE_MOVE);
+				}
+				put(event.getX(pointerIndex), event.getY(pointerIndex), event.getPressure(pointerIndex), TouchUtils.getTimestamp(event), PHASE_MOVE);
+				return true;
+			case MotionEvent.ACTION_UP:
+			case MotionEvent.ACTION_POINTER_UP:
+				if (pointerId==-1 || event.getPointerId(actionIndex)!=pointerId){
+					return false;
+				}
+				put(event.getX(actionIndex), event.getY(actionIndex), event.getPressure(actionIndex), TouchUtils.getTimestamp(event), PHASE_END);
+				pointerId = -1;
+				return true;
+			case MotionEvent.ACTION_CANCEL:
+				if (pointerId==-1){
+					return false;
+				}
+				// Finish the stroke at the last known position.
+				if (count>0){
+					int last = (head + capacity - 1)%capacity;
+					put(xs[last], ys[last], pressures[last], TouchUtils.getTimestamp(event), PHASE_END);
+				} else {
+					int index = Math.max(0, event.findPointerIndex(pointerId));
+					put(event.getX(index), event.getY(index), event.getPressure(index), TouchUtils.getTimestamp(event), PHASE_END);
+				}
+				pointerId = -1;
+				return true;
+		}
+		return false;
+	}
+
+	private void put(float x, float y, float pressure, double timestamp, byte phase){
+		int index;
+		if (count==capacity && (phase!=PHASE_MOVE || phases[(head + capacity - 1)%capacity]!=PHASE_MOVE)){
+			// Samples, which begin or end a stroke, and samples following them are never dropped.
+			grow();
+		}
+		if (count==capacity){
+			droppedSamplesCount++;
+			index = (head + capacity - 1)%capacity;
+		} else {
+			index = head;
+			head = (head+1)%capacity;
+			count++;
+		}
+		xs[index] = x;
+		ys[index] = y;
+		pressures[index] = pressure;
+		timestamps[index] = timestamp;
+		phases[index] = phase;
+	}
+
+	/**
+	 * Moves the queued samples with timestamps up to the given frame timestamp into the batch. The previous batch is discarded.
+	 * A batch never contains samples of two different strokes: if a stroke ends within the batch, the samples of the next stroke remain queued.
+	 * If the stroke continues after the frame time, the batch ends with a sample resampled to the frame timestamp, see {@link #isResampled()}.
+	 * @param frameTimestamp The timestamp of the frame in seconds. Pass Double.POSITIVE_INFINITY to take all queued samples.
+	 * @return The number of the samples in the batch.
+	 */
+	public int poll(double frameTimestamp){
+		batchSize = 0;
+		bBatchBegin = false;
+		bBatchEnd = false;
+		bBatchResampled = false;
+		int first = (head + capacity - count)%capacity;
+		while (count>0){
+			if (timestamps[first]>frameTimestamp){
+				break;
+			}
+			if (phases[first]==PHASE_BEGIN){
+				if (batchSize>0){
+					break;
+				}
+				bBatchBegin = true;
+			}
+			batchXs[batchSize] = xs[first];
+			batchYs[batchSize] = ys[first];
+			batchPressures[batchSize] = pressures[first];
+			batchTimestamps[batchSize] = timestamps[first];
+			batchSize++;
+			count--;
+			boolean bEnd = phases[first]==PHASE_END;
+			first = (first+1)%capacity;
+			if (bEnd){
+				bBatchEnd = true;
+				break;
+			}
+		}
+		if (bResampling && batchSize>0 && !bBatchEnd && count>0 && phases[first]==PHASE_MOVE){
+			resample(first, frameTimestamp);
+		}
+		return batchSize;
+	}
+
+	private void resample(int next, double frameTimestamp){
+		int last = batchSize-1;
+		double interval = timestamps[next] - batchTimestamps[last];
+		if (frameTimestamp<=batchTimestamps[last] || interval<=0){
+			return;
+		}
+		float t = (float)((frameTimestamp - batchTimestamps[last])/interval);
+		batchXs[batchSize] = batchXs[last] + t*(xs[next] - batchXs[last]);
+		batchYs[batchSize] = batchYs[last] + t*(ys[next] - batchYs[last]);
+		batchPressures[batchSize] = batchPressures[last] + t*(pressures[next] - batchPressures[last]);
+		batchTimestamps[batchSize] = frameTimestamp;
+		batchSize++;
+		bBatchResampled = true;
+	}
+
+	/**
+	 * Returns the number of the samples in the current batch.
+	 * @return The batch size.
+	 */
+	public int getBatchSize(){
+		return batchSize;
+	}
+
+	/**
+	 * Returns true if the first sample of the batch starts a stroke.
+	 */
+	public boolean hasBegin(){
+		return bBatchBegin;
+	}
+
+	/**
+	 * Returns true if the last sample of the batch ends a stroke.
+	 */
+	public boolean hasEnd(){
+		return bBatchEnd;
+	}
+
+	/**
+	 * Returns true if the last sample of the batch is not a real sample, but was interpolated at the frame timestamp.
+	 */
+	public boolean isResampled(){
+		return bBatchResampled;
+	}
+
+	/**
+	 * Returns the x coordinate of the sample with the given index in the batch.
+	 */
+	public float getX(int index){
+		return batchXs[index];
+	}
+
+	/**
+	 * Returns the y coordinate of the sample with the given index in the batch.
+	 */
+	public float getY(int index){
+		return batchYs[index];
+	}
+
+	/**
+	 * Returns the pressure of the sample with the given index in the batch.
+	 */
+	public float getPressure(int index){
+		return batchPressures[index];
+	}
+
+	/**
+	 * Returns the timestamp of the sample with the given index in the batch.
+	 * @return The timestamp in seconds.
+	 */
+	public double getTimestamp(int index){
+		return batchTimestamps[index];
+	}
+
+	/**
+	 * Returns the number of the samples queued for the next frames.
+	 * @return The number of the queued samples.
+	 */
+	public int getQueuedSamplesCount(){
+		return count;
+	}
+
+	/**
+	 * Returns the number of the move samples dropped, because the ring buffer was full.
+	 * @return The number of the dropped samples.
+	 */
+	public int getDroppedSamplesCount(){
+		return droppedSamplesCount;
+	}
+
+	/**
+	 * Returns a range of the batch in the (x, y, time) format expected by {@link com.wacom.ink.path.SpeedPathBuilder#addPoints(FloatBuffer, int)}.
+	 * The time is relative to the beginning of the path, as returned by {@link com.wacom.ink.path.SpeedPathBuilder#getBeginTimestamp()}.
+	 * @param from The index of the first sample of the range.
+	 * @param samplesCount The number of the samples in the range.
+	 * @param beginTimestamp The timestamp of the beginning of the path in seconds.
+	 * @return The points. It is important to note, that for performance reasons, each time this method is called, the same buffer will be returned.
+	 */
+	public FloatBuffer getSpeedPathPoints(int from, int samplesCount, double beginTimestamp){
+		for (int i=0;i<samplesCount;i++){
+			points.put(i*3, batchXs[from+i]);
+			points.put(i*3+1, batchYs[from+i]);
+			points.put(i*3+2, (float)(batchTimestamps[from+i] - beginTimestamp));
+		}
+		points.position(0);
+		return points;
+	}
+
+	/**
+	 * Returns a range of the batch in the (x, y, pressure) format expected by {@link com.wacom.ink.path.PathBuilder#addPoints(FloatBuffer, int)} of a {@link com.wacom.ink.path.PressurePathBuilder}.
+	 * @param from The index of the first sample of the range.
+	 * @param samplesCount The number of the samples in the range.
+	 * @return The points. It is important to note, that for performance reasons, each time this method is called, the same buffer will be returned.
+	 */
+	public FloatBuffer getPressurePathPoints(int from, int samplesCount){
+		for (int i=0;i<samplesCount;i++){
+			points.put(i*3, batchXs[from+i]);
+			points.put(i*3+1, batchYs[from+i]);
+			points.put(i*3+2, batchPressures[from+i]);
+		}
+		points.position(0);
+		return points;
+	}
+}
@@ -6,6 +6,8 @@ package com.wacom.ink.utils;
 
 import android.view.MotionEvent;
 
+import com.wacom.ink.path.MovementThresholdPolicy;
+
 /**
  * OpenGl utility class.
  * 
@@ -16,7 +18,10 @@ public class TouchUtils {
 	public final static float NO_PRESSURE = -1.0f;
 	public final static double NO_TIMESTAMP = -1.0d;
 	
-	private final static float MINIMUM_POINT_DISTANCE = 2f;
+	/**
+	 * Constant: The default minimal distance in pixels between two successive move events, used by {@link #filterMotionEventForInking(MotionEvent, TouchPointID)}.
+	 */
+	public final static float MINIMUM_POINT_DISTANCE = 2f;
 	
 	/**
 	 * Constant: Minimum reported pressure by the Android Framework.
@@ -238,6 +243,19 @@ public class TouchUtils {
      * <br/>{@link #STROKE_EVENT_FORCEEND}
      */
 	public static int filterMotionEventForInking(MotionEvent motionEvent, TouchPointID touchPointID){
+		return filterMotionEventForInking(motionEvent, touchPointID, null);
+	}
+
+	/**
+	 * Same as {@link #filterMotionEventForInking(MotionEvent, TouchPointID)}, but the minimal distance between two successive move events is taken from the movement threshold policy,
+	 * so that it follows the scale of the view and the speed of the pen. All samples of the tracked pointer, including the historical ones, are passed to the policy:
+	 * it is reset on the stroke begin event and its screen threshold, see {@link MovementThresholdPolicy#getScreenThreshold()}, is used for the move events.
+	 * @param motionEvent an MotionEvent reported by the Android Framework.
+	 * @param touchPointID a TouchPointID object containing relevant data of the previous MotionEvent.
+	 * @param thresholdPolicy The movement threshold policy, or null to use {@link #MINIMUM_POINT_DISTANCE}.
+	 * @return The expected stroke's event.
+	 */
+	public static int filterMotionEventForInking(MotionEvent motionEvent, TouchPointID touchPointID, MovementThresholdPolicy thresholdPolicy){
 		int activePointerIndex = motionEvent.getActionIndex();
 		int currentPointerId = motionEvent.getPointerId(activePointerIndex);
 
@@ -250,6 +268,7 @@ public class TouchUtils {
 			} else {
 				touchPointID.setData(motionEvent);
 			}
+			beginThreshold(thresholdPolicy, motionEvent, activePointerIndex);
 			if (logger.isEnabled()){
 				if (Logger.LOG_ENABLED) logger.d("ACTION_DOWN / OK, down");
 			}
@@ -259,6 +278,7 @@ public class TouchUtils {
 			if (touchPointID.isInvalid()){
 				//no prev point so we can begin, it's ok
 				touchPointID.setData(motionEvent, activePointerIndex);
+				beginThreshold(thresholdPolicy, motionEvent, activePointerIndex);
 				if (Logger.LOG_ENABLED) logger.d("ACTION_POINTER_DOWN / OK, ptr_down: no prev point so we can begin");
 				return STROKE_EVENT_BEGIN;
 			} else {
@@ -276,7 +296,7 @@ public class TouchUtils {
 			if (prevPointerIndex==-1){
 				//glitch: prev pointer id disappeared?! it's impossible! fail!
 				throw new RuntimeException("ACTION_MOVE / prev pointer id disappeared?! it's impossible! fail!");
-			} else if (!hasReallyMoved(motionEvent.getX(prevPointerIndex), motionEvent.getY(prevPointerIndex), touchPointID.getX(), touchPointID.getY())){
+			} else if (!hasReallyMoved(motionEvent.getX(prevPointerIndex), motionEvent.getY(prevPointerIndex), touchPointID.getX(), touchPointID.getY(), moveThreshold(thresholdPolicy, motionEvent, prevPointerIndex))){
 				//glitch: new move event, but the x,y coordinates are the same as the prev ones, fail!
 				if (Logger.LOG_ENABLED) logger.d("ACTION_MOVE / FAIL, move: new move event, but the x,y coordinates are the same as the prev ones");
 				return failCode;
@@ -330,9 +350,27 @@ public class TouchUtils {
 		return failCode;
 	}
 
-	private static boolean hasReallyMoved(float x, float y, float oldX, float oldY) {
+	private static void beginThreshold(MovementThresholdPolicy thresholdPolicy, MotionEvent motionEvent, int pointerIndex){
+		if (thresholdPolicy!=null){
+			thresholdPolicy.reset();
+			thresholdPolicy.addScreenSample(motionEvent.getX(pointerIndex), motionEvent.getY(pointerIndex), getTimestamp(motionEvent));
+		}
+	}
+
+	private static float moveThreshold(MovementThresholdPolicy thresholdPolicy, MotionEvent motionEvent, int pointerIndex){
+		if (thresholdPolicy==null){
+			return MINIMUM_POINT_DISTANCE;
+		}
+		for (int h=0;h<motionEvent.getHistorySize();h++){
+			thresholdPolicy.addScreenSample(motionEvent.getHistoricalX(pointerIndex, h), motionEvent.getHistoricalY(pointerIndex, h), getTimestamp(motionEvent.getHistoricalEventTime(h)));
+		}
+		thresholdPolicy.addScreenSample(motionEvent.getX(pointerIndex), motionEvent.getY(pointerIndex), getTimestamp(motionEvent));
+		return thresholdPolicy.getScreenThreshold();
+	}
+
+	private static boolean hasReallyMoved(float x, float y, float oldX, float oldY, float minimumDistance) {
 		double dist = Math.sqrt((oldX-x)*(oldX-x)+(oldY-y)*(oldY-y));
-		if (dist<MINIMUM_POINT_DISTANCE){
+		if (dist<minimumDistance){
 			if (Logger.LOG_ENABLED) logger.d("not 'moved': " + dist);
 			return false;
 		} else {
@@ -5,7 +5,6 @@
 
 package com.wacom.ink.utils;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -16,6 +15,8 @@ import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.util.List;
 
 import android.app.Activity;
@@ -35,6 +36,8 @@ import android.os.Debug;
 import android.provider.MediaStore;
 import android.util.Log;
 
+import com.wacom.ink.geometry.CatmullRomSpline;
+
 /**
  * Utility class.
  * 
@@ -500,39 +503,29 @@ public class Utils{
 		fillPath(path, buffer, size, stride, position, 0, 1);
 	}
 	
+	/**
+	 * Fills the path with cubic Bezier curves built from the Catmull-Rom control points, and closes it.
+	 * The segments are converted with {@link CatmullRomSpline#toBezier(FloatBuffer, int, int, int, int, float[], int)} and no memory is allocated per segment. For paths redrawn on every frame, see {@link CatmullRomPathConverter}.
+	 */
 	public static void fillPath(Path path, FloatBuffer buffer, int size, int stride, int position, int x, int y){
-		path.reset();
+		path.rewind();
 	    
 	    int n = size/stride;
+	    if (n<4){
+	        return;
+	    }
 	    
-	    for (int i = 1; i<n-2; i++){
-	        if (i==1){
-	            path.moveTo(getFloatBufferPointValue(buffer, position, i, stride, x), getFloatBufferPointValue(buffer, position, i, stride, y));
-	        }
+	    // The Bezier control points of a single segment: x0..x3, y0..y3.
+	    float[] segmentPoints = new float[8];
+	    path.moveTo(buffer.get(position + stride + x), buffer.get(position + stride + y));
 	    
-	        if (i<n-3){
-	            //CatmullRom to bezier
-	            float bufferX[] = {getFloatBufferPointValue(buffer, position, i+0, stride, x), getFloatBufferPointValue(buffer, position, i+1, stride, x), 
-	            		getFloatBufferPointValue(buffer, position, i+2, stride, x), getFloatBufferPointValue(buffer, position, i+3, stride, x)};
-	            float bufferY[] = {getFloatBufferPointValue(buffer, position, i+0, stride, y), getFloatBufferPointValue(buffer, position, i+1, stride, y), 
-	            		getFloatBufferPointValue(buffer, position, i+2, stride, y), getFloatBufferPointValue(buffer, position, i+3, stride, y)};
-	            
-	            float one6th = 0.166666666666f;
-	            float bx1 = -one6th * bufferX[0] + bufferX[1] + one6th * bufferX[2];
-	            float bx2 = +one6th * bufferX[1] + bufferX[2] - one6th * bufferX[3];
-	            float bx3 = bufferX[2];
-	            
-	            float by1 = -one6th * bufferY[0] + bufferY[1] + one6th * bufferY[2];
-	            float by2 = +one6th * bufferY[1] + bufferY[2] - one6th * bufferY[3];
-	            float by3 = bufferY[2];
-	            
-	            path.cubicTo(bx1, by1, bx2, by2, bx3, by3);
-	        }
-	        
-	        if (i==n-3){
-	            path.close();
-	        }
+	    for (int i = 1; i<n-3; i++){
+	        //CatmullRom to bezier
+	        CatmullRomSpline.toBezier(buffer, position, stride, x, i, segmentPoints, 0);
+	        CatmullRomSpline.toBezier(buffer, position, stride, y, i, segmentPoints, 4);
+	        path.cubicTo(segmentPoints[1], segmentPoints[5], segmentPoints[2], segmentPoints[6], segmentPoints[3], segmentPoints[7]);
 	    }
+	    path.close();
 	}
 	
 	static public <T> void addAllToList(List<T> source, List<T> destination){
@@ -688,36 +681,35 @@ public class Utils{
 		return bSuccess;
 	}
 	
+	/**
+	 * Reads the whole stream into a native byte buffer. The data is read directly into the buffer, without intermediate copies.
+	 * For large documents consider decoding the stream with {@link com.wacom.ink.serialization.InkStreamDecoder} instead.
+	 * @return A buffer with position 0 and limit equal to the number of bytes read, or null if reading failed.
+	 */
 	public static ByteBuffer loadBinaryFile(InputStream in){
 		ByteBuffer buffer = null;
-		ByteArrayOutputStream os = new ByteArrayOutputStream();
 		boolean bSuccess = true;
 		try {
-			byte[] buf = new byte[256*1024];
-			int len;
-			while ((len = in.read(buf)) > 0) {
-				os.write(buf, 0, len);
+			ReadableByteChannel channel = Channels.newChannel(in);
+			buffer = createNativeByteBuffer(Math.max(in.available(), 256*1024));
+			while (channel.read(buffer)>=0) {
+				if (!buffer.hasRemaining()){
+					ByteBuffer newBuffer = createNativeByteBuffer(buffer.capacity()*2);
+					buffer.flip();
+					newBuffer.put(buffer);
+					buffer = newBuffer;
+				}
 			}
-			in.close();
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-			bSuccess = false;
+			buffer.flip();
 		} catch (IOException e) {
 			e.printStackTrace();
 			bSuccess = false;
 		} finally { 
-			Log.e("BUF", "BUFFER222: " + os.toByteArray().length);
-			buffer = Utils.createNativeByteBuffer(os.toByteArray());
 			try {
 				in.close();
 			} catch (Exception e) {
 				e.printStackTrace();
 			}
-			try {
-				os.close();
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
 		}
 		return bSuccess?buffer:null;
 	}
@@ -726,6 +718,9 @@ public class Utils{
 		return loadBinaryFile(uri, null, 0);
 	}
 	
+	/**
+	 * Reads a file into a native byte buffer. To decode large documents without reading them, map them with {@link com.wacom.ink.serialization.InkFileMapper} instead.
+	 */
 	public static ByteBuffer loadBinaryFile(Uri uri, ByteBuffer optionalInBuffer, int optionalPosition){
 		File file = new File(uri.getPath());
 